@@ -0,0 +1,265 @@
+CREATE DATABASE flight_repo;
+
+CREATE SCHEMA flights;
+
+-- Таблица "Аэропорт"
+CREATE TABLE airport
+(
+    code    varchar(3) PRIMARY KEY,
+    country varchar(128) NOT NULL,
+    city    varchar(128) NOT NULL
+);
+
+-- Таблица "Самолёт"
+CREATE TABLE aircraft
+(
+    id    serial PRIMARY KEY,
+    model varchar(128) NOT NULL
+);
+
+-- Таблица "Место в самолете"
+CREATE TABLE seat
+(
+    aircraft_id int REFERENCES aircraft (id),
+    seat_no     varchar(4) NOT NULL,
+    PRIMARY KEY (aircraft_id, seat_no)
+);
+
+-- Таблица "Рейс", секционирована по месяцам вылета. Первичный и уникальные ключи
+-- секционированной таблицы обязаны включать ключ секционирования
+CREATE TABLE flight
+(
+    id                     bigserial,
+    flight_no              varchar(16)                          NOT NULL,
+    departure_date         timestamp                            NOT NULL,
+    departure_airport_code varchar(3) REFERENCES airport (code) NOT NULL,
+    arrival_date           timestamp                            NOT NULL,
+    arrival_airport_code   varchar(3) REFERENCES airport (code) NOT NULL,
+    aircraft_id            bigint REFERENCES aircraft (id)      NOT NULL,
+    status                 varchar(32)                          NOT NULL,
+    PRIMARY KEY (id, departure_date),
+    UNIQUE (flight_no, departure_date)
+) PARTITION BY RANGE (departure_date);
+
+-- Поиск рейсов по маршруту и времени вылета (FlightDao.search)
+CREATE INDEX flight_route_departure_idx ON flight (departure_airport_code, arrival_airport_code, departure_date);
+
+-- Таблица "Билет" хранит дату вылета своего рейса и секционирована по ней так же, как рейсы
+CREATE TABLE ticket
+(
+    id             bigserial,
+    passport_no    varchar(32)  NOT NULL,
+    passenger_name varchar(128) NOT NULL,
+    flight_id      bigint       NOT NULL,
+    departure_date timestamp    NOT NULL,
+    seat_no        varchar(3)   NOT NULL,
+    cost           int          NOT NULL,
+    PRIMARY KEY (id, departure_date),
+    UNIQUE (flight_id, seat_no, departure_date),
+    -- перенос вылета рейса переносит его билеты в секцию нового месяца
+    FOREIGN KEY (flight_id, departure_date) REFERENCES flight (id, departure_date) ON UPDATE CASCADE
+) PARTITION BY RANGE (departure_date);
+
+-- Секции месяцев с примерами данных, следующие создаёт PartitionMaintenance
+CREATE TABLE flight_p2020_05 PARTITION OF flight FOR VALUES FROM ('2020-05-01') TO ('2020-06-01');
+CREATE TABLE flight_p2020_06 PARTITION OF flight FOR VALUES FROM ('2020-06-01') TO ('2020-07-01');
+CREATE TABLE flight_p2020_07 PARTITION OF flight FOR VALUES FROM ('2020-07-01') TO ('2020-08-01');
+CREATE TABLE flight_p2020_08 PARTITION OF flight FOR VALUES FROM ('2020-08-01') TO ('2020-09-01');
+CREATE TABLE flight_p2020_09 PARTITION OF flight FOR VALUES FROM ('2020-09-01') TO ('2020-10-01');
+CREATE TABLE flight_p2020_10 PARTITION OF flight FOR VALUES FROM ('2020-10-01') TO ('2020-11-01');
+CREATE TABLE flight_p2020_11 PARTITION OF flight FOR VALUES FROM ('2020-11-01') TO ('2020-12-01');
+CREATE TABLE flight_p2020_12 PARTITION OF flight FOR VALUES FROM ('2020-12-01') TO ('2021-01-01');
+CREATE TABLE ticket_p2020_05 PARTITION OF ticket FOR VALUES FROM ('2020-05-01') TO ('2020-06-01');
+CREATE TABLE ticket_p2020_06 PARTITION OF ticket FOR VALUES FROM ('2020-06-01') TO ('2020-07-01');
+CREATE TABLE ticket_p2020_07 PARTITION OF ticket FOR VALUES FROM ('2020-07-01') TO ('2020-08-01');
+CREATE TABLE ticket_p2020_08 PARTITION OF ticket FOR VALUES FROM ('2020-08-01') TO ('2020-09-01');
+CREATE TABLE ticket_p2020_09 PARTITION OF ticket FOR VALUES FROM ('2020-09-01') TO ('2020-10-01');
+CREATE TABLE ticket_p2020_10 PARTITION OF ticket FOR VALUES FROM ('2020-10-01') TO ('2020-11-01');
+CREATE TABLE ticket_p2020_11 PARTITION OF ticket FOR VALUES FROM ('2020-11-01') TO ('2020-12-01');
+CREATE TABLE ticket_p2020_12 PARTITION OF ticket FOR VALUES FROM ('2020-12-01') TO ('2021-01-01');
+
+-- Число билетов по паспорту и имени пассажира, ведётся триггерами на ticket
+CREATE TABLE passenger_ticket_count
+(
+    passport_no    varchar(32)  NOT NULL,
+    passenger_name varchar(128) NOT NULL,
+    ticket_count   bigint       NOT NULL,
+    PRIMARY KEY (passport_no, passenger_name)
+);
+
+-- Число билетов по имени (первому слову passenger_name), ведётся триггерами на ticket.
+-- Счётчик имени разложен по 16 слотам (ticket.id % 16), чтобы параллельные продажи
+-- билетов на одно имя не ждали блокировку одной строки
+CREATE TABLE first_name_count
+(
+    name         varchar(128) NOT NULL,
+    slot         smallint     NOT NULL,
+    ticket_count bigint       NOT NULL,
+    PRIMARY KEY (name, slot)
+);
+
+-- Тела функций содержат ';', поэтому до конца функций разделитель команд для ScriptRunner - '--;',
+-- для psql это комментарий
+-- @DELIMITER --;
+CREATE FUNCTION count_ticket_passengers() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    remaining bigint;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE passenger_ticket_count
+        SET ticket_count = ticket_count - 1
+        WHERE passport_no = OLD.passport_no
+          AND passenger_name = OLD.passenger_name
+        RETURNING ticket_count INTO remaining;
+        IF remaining = 0 THEN
+            DELETE
+            FROM passenger_ticket_count
+            WHERE passport_no = OLD.passport_no
+              AND passenger_name = OLD.passenger_name;
+        END IF;
+
+        UPDATE first_name_count
+        SET ticket_count = ticket_count - 1
+        WHERE name = split_part(OLD.passenger_name, ' ', 1)
+          AND slot = OLD.id % 16
+        RETURNING ticket_count INTO remaining;
+        IF remaining = 0 THEN
+            DELETE
+            FROM first_name_count
+            WHERE name = split_part(OLD.passenger_name, ' ', 1)
+              AND slot = OLD.id % 16;
+        END IF;
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO passenger_ticket_count AS c (passport_no, passenger_name, ticket_count)
+        VALUES (NEW.passport_no, NEW.passenger_name, 1)
+        ON CONFLICT (passport_no, passenger_name) DO UPDATE SET ticket_count = c.ticket_count + 1;
+
+        INSERT INTO first_name_count AS c (name, slot, ticket_count)
+        VALUES (split_part(NEW.passenger_name, ' ', 1), NEW.id % 16, 1)
+        ON CONFLICT (name, slot) DO UPDATE SET ticket_count = c.ticket_count + 1;
+    END IF;
+    RETURN NULL;
+END
+$$; --;
+
+CREATE FUNCTION clear_ticket_passengers() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    TRUNCATE passenger_ticket_count, first_name_count;
+    RETURN NULL;
+END
+$$; --;
+-- @DELIMITER ;
+
+CREATE TRIGGER ticket_passengers
+    AFTER INSERT OR DELETE
+    ON ticket
+    FOR EACH ROW
+EXECUTE FUNCTION count_ticket_passengers();
+
+-- изменение только стоимости билета счётчики не трогает
+CREATE TRIGGER ticket_passengers_update
+    AFTER UPDATE OF passport_no, passenger_name
+    ON ticket
+    FOR EACH ROW
+    WHEN (OLD.passport_no IS DISTINCT FROM NEW.passport_no OR OLD.passenger_name IS DISTINCT FROM NEW.passenger_name)
+EXECUTE FUNCTION count_ticket_passengers();
+
+CREATE TRIGGER ticket_passengers_truncate
+    AFTER TRUNCATE
+    ON ticket
+    FOR EACH STATEMENT
+EXECUTE FUNCTION clear_ticket_passengers();
+
+INSERT INTO airport (code, country, city)
+VALUES ('MNK', 'Беларусь', 'Минск'),
+       ('LDN', 'Англия', 'Лондон'),
+       ('MSK', 'Россия', 'Москва'),
+       ('BSL', 'Испания', 'Барселона');
+
+INSERT INTO aircraft (model)
+VALUES ('Боинг 777-300'),
+       ('Боинг 737-300'),
+       ('Аэробус A320-200'),
+       ('Суперджет-100');
+
+INSERT INTO seat (aircraft_id, seat_no)
+SELECT id, s.column1
+FROM aircraft
+         CROSS JOIN (VALUES ('A1'), ('A2'), ('B1'), ('B2'), ('C1'), ('C2'), ('D1'), ('D2') ORDER BY 1) s;
+
+INSERT INTO flight (flight_no, departure_date, departure_airport_code, arrival_date, arrival_airport_code, aircraft_id,
+                    status)
+VALUES ('MN3002', '2020-06-14T14:30', 'MNK', '2020-06-14T18:07', 'LDN', 1, 'ARRIVED'),
+       ('MN3002', '2020-06-16T09:15', 'LDN', '2020-06-16T13:00', 'MNK', 1, 'ARRIVED'),
+       ('BC2801', '2020-07-28T23:25', 'MNK', '2020-07-29T02:43', 'LDN', 2, 'ARRIVED'),
+       ('BC2801', '2020-08-01T11:00', 'LDN', '2020-08-01T14:15', 'MNK', 2, 'DEPARTED'),
+       ('TR3103', '2020-05-03T13:10', 'MSK', '2020-05-03T18:38', 'BSL', 3, 'ARRIVED'),
+       ('TR3103', '2020-05-10T07:15', 'BSL', '2020-05-10T012:44', 'MSK', 3, 'CANCELLED'),
+       ('CV9827', '2020-09-09T18:00', 'MNK', '2020-09-09T19:15', 'MSK', 4, 'SCHEDULED'),
+       ('CV9827', '2020-09-19T08:55', 'MSK', '2020-09-19T10:05', 'MNK', 4, 'SCHEDULED'),
+       ('QS8712', '2020-12-18T03:35', 'MNK', '2020-12-18T06:46', 'LDN', 2, 'ARRIVED');
+
+INSERT INTO ticket (passport_no, passenger_name, flight_id, departure_date, seat_no, cost)
+SELECT passport_no, passenger_name, flight_id, (SELECT departure_date FROM flight f WHERE f.id = t.flight_id), seat_no, cost
+FROM (VALUES ('112233', 'Иван Иванов', 1, 'A1', 200),
+             ('23234A', 'Петр Петров', 1, 'B1', 180),
+             ('SS988D', 'Светлана Светикова', 1, 'B2', 175),
+             ('QYASDE', 'Андрей Андреев', 1, 'C2', 175),
+             ('POQ234', 'Иван Кожемякин', 1, 'D1', 160),
+             ('898123', 'Олег Рубцов', 1, 'A2', 198),
+             ('555321', 'Екатерина Петренко', 2, 'A1', 250),
+             ('QO23OO', 'Иван Розмаринов', 2, 'B2', 225),
+             ('9883IO', 'Иван Кожемякин', 2, 'C1', 217),
+             ('123UI2', 'Андрей Буйнов', 2, 'C2', 227),
+             ('SS988D', 'Светлана Светикова', 2, 'D2', 277),
+             ('EE2344', 'Дмитрий Трусцов', 3, 'А1', 300),
+             ('AS23PP', 'Максим Комсомольцев', 3, 'А2', 285),
+             ('322349', 'Эдуард Щеглов', 3, 'B1', 99),
+             ('DL123S', 'Игорь Беркутов', 3, 'B2', 199),
+             ('MVM111', 'Алексей Щербин', 3, 'C1', 299),
+             ('ZZZ111', 'Денис Колобков', 3, 'C2', 230),
+             ('234444', 'Иван Старовойтов', 3, 'D1', 180),
+             ('LLLL12', 'Людмила Старовойтова', 3, 'D2', 224),
+             ('RT34TR', 'Степан Дор', 4, 'A1', 129),
+             ('999666', 'Анастасия Шепелева', 4, 'A2', 152),
+             ('234444', 'Иван Старовойтов', 4, 'B1', 140),
+             ('LLLL12', 'Людмила Старовойтова', 4, 'B2', 140),
+             ('LLLL12', 'Роман Дронов', 4, 'D2', 109),
+             ('112233', 'Иван Иванов', 5, 'С2', 170),
+             ('NMNBV2', 'Лариса Тельникова', 5, 'С1', 185),
+             ('DSA586', 'Лариса Привольная', 5, 'A1', 204),
+             ('DSA583', 'Артур Мирный', 5, 'B1', 189),
+             ('DSA581', 'Евгений Кудрявцев', 6, 'A1', 204),
+             ('EE2344', 'Дмитрий Трусцов', 6, 'A2', 214),
+             ('AS23PP', 'Максим Комсомольцев', 6, 'B2', 176),
+             ('112233', 'Иван Иванов', 6, 'B1', 135),
+             ('309623', 'Татьяна Крот', 6, 'С1', 155),
+             ('319623', 'Юрий Дувинков', 6, 'D1', 125),
+             ('322349', 'Эдуард Щеглов', 7, 'A1', 69),
+             ('DIOPSL', 'Евгений Безфамильная', 7, 'A2', 58),
+             ('DIOPS1', 'Константин Швец', 7, 'D1', 65),
+             ('DIOPS2', 'Юлия Швец', 7, 'D2', 65),
+             ('1IOPS2', 'Ник Говриленко', 7, 'C2', 73),
+             ('999666', 'Анастасия Шепелева', 7, 'B1', 66),
+             ('23234A', 'Петр Петров', 7, 'C1', 80),
+             ('QYASDE', 'Андрей Андреев', 8, 'A1', 100),
+             ('1QAZD2', 'Лариса Потемнкина', 8, 'A2', 89),
+             ('5QAZD2', 'Карл Хмелев', 8, 'B2', 79),
+             ('2QAZD2', 'Жанна Хмелева', 8, 'С2', 77),
+             ('BMXND1', 'Светлана Хмурая', 8, 'В2', 94),
+             ('BMXND2', 'Кирилл Сарычев', 8, 'D1', 81),
+             ('SS988D', 'Светлана Светикова', 9, 'A2', 222),
+             ('SS978D', 'Андрей Желудь', 9, 'A1', 198),
+             ('SS968D', 'Дмитрий Воснецов', 9, 'B1', 243),
+             ('SS958D', 'Максим Гребцов', 9, 'С1', 251),
+             ('112233', 'Иван Иванов', 9, 'С2', 135),
+             ('NMNBV2', 'Лариса Тельникова', 9, 'B2', 217),
+             ('23234A', 'Петр Петров', 9, 'D1', 189),
+             ('123951', 'Полина Зверева', 9, 'D2', 234)) t (passport_no, passenger_name, flight_id, seat_no, cost);
+
@@ -0,0 +1,86 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.dao.FlightDao;
+import by.javaguru.dao.TicketDao;
+import by.javaguru.dto.TicketFilter;
+import by.javaguru.dto.TicketUpdateInfo;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO operations measured by the single and multi-threaded subclasses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class AbstractDaoBenchmark {
+    private static final TicketDao ticketDao = TicketDao.getInstance();
+    private static final FlightDao flightDao = FlightDao.getInstance();
+
+    @Benchmark
+    public Optional<Ticket> findTicketById(DaoState state) {
+        return ticketDao.findById(state.randomTicketId());
+    }
+
+    @Benchmark
+    public Optional<Flight> findFlightById(DaoState state) {
+        return flightDao.findById(state.randomFlightId());
+    }
+
+    @Benchmark
+    public List<Flight> findAllFlights() {
+        return flightDao.findAll();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Ticket> findAllTickets() {
+        return ticketDao.findAll();
+    }
+
+    @Benchmark
+    public boolean saveAndDeleteTicket(DaoState state, WorkerState worker) {
+        Ticket ticket = ticketDao.save(Ticket.builder()
+                .passportNo("BENCH")
+                .passengerName("Бенчмарк Бенчмарков")
+                .flightId(state.randomFlightId())
+                // seat numbers that generated data never uses, unique per thread
+                .seatNo(worker.seatNo)
+                .cost(100)
+                .build());
+        return ticketDao.delete(ticket.getId());
+    }
+
+    @Benchmark
+    public int updateTickets(DaoState state) {
+        TicketFilter filter = TicketFilter.builder().flightId(state.randomFlightId()).build();
+        return ticketDao.updateTickets(filter, new TicketUpdateInfo(50 + ThreadLocalRandom.current().nextInt(300)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<String> findMostCommonNames() {
+        return ticketDao.findMostCommonNames(10);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<String, Integer> findPassengerTotalTicketCount() {
+        return ticketDao.findPassengerTotalTicketCount();
+    }
+}
@@ -0,0 +1,62 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.dto.GenerationReport;
+import by.javaguru.generator.DataGenerator;
+import by.javaguru.generator.GeneratorConfig;
+import by.javaguru.util.ConnectionManager;
+import lombok.experimental.UtilityClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Tops the schema from {@code create-database.sql} up to about the requested
+ * number of tickets with {@link DataGenerator}, sized by the average number of
+ * tickets it sells per flight.
+ */
+@UtilityClass
+public class BenchmarkData {
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkData.class);
+    // about 200 seats per aircraft on average at the default load factor of 0.85
+    private static final int TICKETS_PER_FLIGHT = 170;
+    private static final int FLIGHTS_PER_DAY = 100;
+    private static final String COUNT_SQL = "SELECT count(*) FROM %s";
+    private static final String MAX_ID_SQL = "SELECT coalesce(max(id), 0) FROM %s";
+
+    public static void ensureTickets(long targetTickets) {
+        long existing = queryLong(COUNT_SQL.formatted("ticket"));
+        if (existing >= targetTickets) {
+            logger.info("Ticket table already holds {} rows", existing);
+            return;
+        }
+
+        long flights = (targetTickets - existing + TICKETS_PER_FLIGHT - 1) / TICKETS_PER_FLIGHT;
+        int days = (int) ((flights + FLIGHTS_PER_DAY - 1) / FLIGHTS_PER_DAY);
+        int flightsPerDay = (int) ((flights + days - 1) / days);
+        GeneratorConfig config = GeneratorConfig.builder()
+                .days(days)
+                .flightsPerDay(flightsPerDay)
+                .build();
+        GenerationReport report = new DataGenerator(config).generate();
+        logger.info("Seeded {}", report);
+    }
+
+    public static long maxId(String table) {
+        return queryLong(MAX_ID_SQL.formatted(table));
+    }
+
+    private static long queryLong(String sql) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            ResultSet result = statement.executeQuery();
+            result.next();
+            return result.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
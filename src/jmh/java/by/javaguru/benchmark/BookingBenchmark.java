@@ -0,0 +1,218 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.dao.AircraftDao;
+import by.javaguru.dao.BookingDao;
+import by.javaguru.dao.FlightDao;
+import by.javaguru.dao.SeatDao;
+import by.javaguru.dao.TicketDao;
+import by.javaguru.entity.Aircraft;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Seat;
+import by.javaguru.entity.Ticket;
+import by.javaguru.exception.DaoException;
+import by.javaguru.util.ConnectionManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sale spike: every thread books seats on a small window of hot flights, and
+ * the window moves on as flights sell out. {@code naiveSave} is what callers
+ * did before, a random seat through {@code TicketDao.save} retried on every
+ * unique violation; {@code bookAnySeat} goes through {@link BookingDao}.
+ * <p>
+ * The {@code bookings} and {@code conflicts} secondary results are totals per
+ * iteration, their ratio is the conflict rate. {@code BookingDao} conflicts are
+ * counted globally and logged per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class BookingBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(BookingBenchmark.class);
+    private static final String MODEL = "Benchmark 300";
+    private static final String[] SEAT_LETTERS = {"A", "B", "C", "D", "E", "F"};
+    private static final int ROWS = 50;
+    private static final int FLIGHTS_PER_ITERATION = 1_000;
+    private static final String DELETE_TICKETS_SQL = """
+            DELETE FROM ticket
+            WHERE flight_id IN (SELECT id FROM flight WHERE aircraft_id = ?)
+            """;
+    private static final String DELETE_FLIGHTS_SQL = "DELETE FROM flight WHERE aircraft_id = ?";
+    private static final String DELETE_SEATS_SQL = "DELETE FROM seat WHERE aircraft_id = ?";
+    private static final String DELETE_AIRCRAFT_SQL = "DELETE FROM aircraft WHERE id = ?";
+
+    @Param("8")
+    public int hotFlights;
+
+    private final TicketDao ticketDao = TicketDao.getInstance();
+    private final BookingDao bookingDao = BookingDao.getInstance();
+    private final List<String> seatNos = new ArrayList<>();
+    private final AtomicInteger firstOpen = new AtomicInteger();
+    private Aircraft aircraft;
+    private volatile List<Long> flightIds;
+    private int iteration;
+    private long bookingsAtStart;
+    private long conflictsAtStart;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long bookings;
+        public long conflicts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bookings = 0;
+            conflicts = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createAircraft() {
+        aircraft = AircraftDao.getInstance().save(Aircraft.builder().model(MODEL).build());
+
+        List<Seat> seats = new ArrayList<>();
+        for (int row = 1; row <= ROWS; row++) {
+            for (String letter : SEAT_LETTERS) {
+                seatNos.add(letter + row);
+                seats.add(Seat.builder().aircraftId(aircraft.getId()).seatNo(letter + row).build());
+            }
+        }
+        SeatDao.getInstance().saveAll(seats);
+    }
+
+    @Setup(Level.Iteration)
+    public void createFlights() {
+        List<Flight> flights = new ArrayList<>(FLIGHTS_PER_ITERATION);
+        // a day per iteration keeps flight number and departure unique
+        LocalDateTime departure = LocalDateTime.of(2030, 1, 1, 0, 0).plusDays(iteration++);
+        for (int i = 0; i < FLIGHTS_PER_ITERATION; i++) {
+            flights.add(Flight.builder()
+                    .flightNo("SP%04d".formatted(i))
+                    .departureDate(departure.plusMinutes(i))
+                    .departureAirportCode("MNK")
+                    .arrivalDate(departure.plusMinutes(i).plusHours(2))
+                    .arrivalAirportCode("LDN")
+                    .aircraftId(aircraft.getId().longValue())
+                    .status("SCHEDULED")
+                    .build());
+        }
+        flightIds = FlightDao.getInstance().saveAll(flights).stream().map(Flight::getId).toList();
+        firstOpen.set(0);
+        bookingsAtStart = bookingDao.getBookingCount();
+        conflictsAtStart = bookingDao.getConflictCount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportConflicts() {
+        long bookings = bookingDao.getBookingCount() - bookingsAtStart;
+        long conflicts = bookingDao.getConflictCount() - conflictsAtStart;
+        if (bookings > 0) {
+            logger.info("BookingDao: {} bookings, {} conflicts ({} per booking)", bookings, conflicts,
+                    "%.4f".formatted((double) conflicts / bookings));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void dropAircraft() throws SQLException {
+        try (Connection connection = ConnectionManager.open()) {
+            for (String sql : List.of(DELETE_TICKETS_SQL, DELETE_FLIGHTS_SQL, DELETE_SEATS_SQL,
+                    DELETE_AIRCRAFT_SQL)) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, aircraft.getId());
+                    statement.executeUpdate();
+                }
+            }
+        }
+        ConnectionManager.close();
+    }
+
+    @Benchmark
+    public Ticket naiveSave(Counters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int index = pickFlight();
+            // a flight that rejected every try is taken as sold out
+            for (int attempt = 0; attempt < seatNos.size(); attempt++) {
+                Ticket ticket = ticket(flightIds.get(index), seatNos.get(random.nextInt(seatNos.size())));
+                try {
+                    ticketDao.save(ticket);
+                    counters.bookings++;
+                    return ticket;
+                } catch (DaoException e) {
+                    counters.conflicts++;
+                }
+            }
+            soldOut(index);
+        }
+    }
+
+    @Benchmark
+    public Ticket bookAnySeat(Counters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int index = pickFlight();
+            Ticket ticket = ticket(flightIds.get(index), seatNos.get(random.nextInt(seatNos.size())));
+            Optional<Ticket> booked = bookingDao.bookAnySeat(ticket);
+            if (booked.isPresent()) {
+                counters.bookings++;
+                return booked.get();
+            }
+            soldOut(index);
+        }
+    }
+
+    private int pickFlight() {
+        int index = firstOpen.get() + ThreadLocalRandom.current().nextInt(hotFlights);
+        if (index >= flightIds.size()) {
+            throw new IllegalStateException("All %d flights of the iteration are sold out, make iterations shorter"
+                    .formatted(flightIds.size()));
+        }
+        return index;
+    }
+
+    private void soldOut(int index) {
+        firstOpen.accumulateAndGet(index + 1, Math::max);
+    }
+
+    private static Ticket ticket(Long flightId, String seatNo) {
+        int passenger = ThreadLocalRandom.current().nextInt(1_000_000);
+        return Ticket.builder()
+                .passportNo("S%07d".formatted(passenger))
+                .passengerName("Иван Иванов")
+                .flightId(flightId)
+                .seatNo(seatNo)
+                .cost(100)
+                .build();
+    }
+}
@@ -0,0 +1,40 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.util.ConnectionManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Benchmark)
+public class DaoState {
+    @Param("100000")
+    public long tickets;
+
+    long maxTicketId;
+    long maxFlightId;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkData.ensureTickets(tickets);
+        maxTicketId = BenchmarkData.maxId("ticket");
+        maxFlightId = BenchmarkData.maxId("flight");
+    }
+
+    @TearDown(Level.Trial)
+    public void closePool() {
+        ConnectionManager.close();
+    }
+
+    long randomTicketId() {
+        return ThreadLocalRandom.current().nextLong(1, maxTicketId + 1);
+    }
+
+    long randomFlightId() {
+        return ThreadLocalRandom.current().nextLong(1, maxFlightId + 1);
+    }
+}
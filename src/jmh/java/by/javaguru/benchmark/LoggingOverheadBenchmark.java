@@ -0,0 +1,75 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.dao.TicketDao;
+import by.javaguru.entity.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AsyncAppender;
+import org.apache.logging.log4j.core.appender.NullAppender;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation of {@code TicketDao.findById} per DAO log level. Log events go
+ * through an async appender into a discarding appender, so the numbers show
+ * what logging costs the caller and not the console. Compare
+ * {@code gc.alloc.rate.norm} between the levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingOverheadBenchmark {
+    private static final String DAO_LOGGER = "by.javaguru";
+    private static final TicketDao ticketDao = TicketDao.getInstance();
+
+    @Param({"INFO", "DEBUG", "TRACE"})
+    public String level;
+
+    @Setup(Level.Trial)
+    public void configureLogging() {
+        LoggerContext context = (LoggerContext) LogManager.getContext(false);
+        Configuration configuration = context.getConfiguration();
+
+        Appender discard = NullAppender.createAppender("Discard");
+        discard.start();
+        configuration.addAppender(discard);
+        Appender async = AsyncAppender.newBuilder()
+                .setName("AsyncDiscard")
+                .setConfiguration(configuration)
+                .setAppenderRefs(new AppenderRef[]{AppenderRef.createAppenderRef("Discard", null, null)})
+                .build();
+        async.start();
+        configuration.addAppender(async);
+
+        LoggerConfig daoLogger = configuration.getLoggerConfig(DAO_LOGGER);
+        daoLogger.getAppenders().keySet().forEach(daoLogger::removeAppender);
+        daoLogger.addAppender(async, null, null);
+        daoLogger.setLevel(org.apache.logging.log4j.Level.valueOf(level));
+        context.updateLoggers();
+    }
+
+    @Benchmark
+    public Optional<Ticket> findTicketById(DaoState state) {
+        return ticketDao.findById(state.randomTicketId());
+    }
+}
@@ -0,0 +1,10 @@
+package by.javaguru.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Same operations with as many threads as the default pool has connections.
+ */
+@Threads(10)
+public class MultiThreadDaoBenchmark extends AbstractDaoBenchmark {
+}
@@ -0,0 +1,54 @@
+package by.javaguru.benchmark;
+
+import by.javaguru.dao.TicketDao;
+import by.javaguru.entity.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Full ticket table read by one thread ({@code findAll}) against id ranges read
+ * concurrently, collected in id order or handed out as they arrive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ParallelScanBenchmark {
+    private static final TicketDao ticketDao = TicketDao.getInstance();
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Benchmark
+    public List<Ticket> findAll(DaoState state) {
+        return ticketDao.findAll();
+    }
+
+    @Benchmark
+    public List<Ticket> findAllParallel(DaoState state) {
+        return ticketDao.findAllParallel(parallelism);
+    }
+
+    @Benchmark
+    public long forEachParallel(DaoState state) {
+        LongAdder cost = new LongAdder();
+        ticketDao.forEachParallel(parallelism, ticket -> cost.add(ticket.getCost()));
+        return cost.sum();
+    }
+}
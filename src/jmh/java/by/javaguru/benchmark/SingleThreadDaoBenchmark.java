@@ -0,0 +1,7 @@
+package by.javaguru.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+@Threads(1)
+public class SingleThreadDaoBenchmark extends AbstractDaoBenchmark {
+}
@@ -0,0 +1,29 @@
+package by.javaguru.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-thread state: a seat number no other benchmark thread writes.
+ */
+@State(Scope.Thread)
+public class WorkerState {
+    // "Z" and two base-36 digits still fit seat_no varchar(3)
+    private static final int MAX_WORKERS = 36 * 36;
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
+    String seatNo;
+
+    @Setup(Level.Trial)
+    public void assignSeat() {
+        int index = NEXT_INDEX.getAndIncrement();
+        if (index >= MAX_WORKERS) {
+            throw new IllegalStateException("At most %d benchmark threads get a seat of their own".formatted(MAX_WORKERS));
+        }
+        seatNo = "Z" + Integer.toString(index, 36);
+    }
+}
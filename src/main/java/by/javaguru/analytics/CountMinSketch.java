@@ -0,0 +1,130 @@
+package by.javaguru.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Sums of non-negative amounts per {@code long} key in {@code depth} rows of
+ * {@code width} counters. An estimate never undercounts, and overcounts by at
+ * most {@code e / width} of the total with probability {@code 1 - e^-depth}.
+ * Updates are conservative, only the counters below the new minimum are
+ * raised, which keeps estimates of light keys much closer than plain
+ * Count-Min does. Sketches of the same shape merge by adding counters and stay
+ * upper bounds.
+ * <p>
+ * Not thread-safe.
+ */
+public class CountMinSketch {
+    private static final char TYPE = 'C';
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_WIDTH = 1 << 24;
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * @param width number of counters per row, a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be within 1..%d, got %d".formatted(MAX_DEPTH, depth));
+        }
+        if (width < 1 || width > MAX_WIDTH || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Width must be a power of two up to %d, got %d"
+                    .formatted(MAX_WIDTH, width));
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    public void add(long key, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Amount must not be negative, got " + amount);
+        }
+        long hash = Hashing.mix(key);
+        long target = estimateHash(hash) + amount;
+        for (int row = 0; row < depth; row++) {
+            int index = indexOf(hash, row);
+            if (counters[index] < target) {
+                counters[index] = target;
+            }
+        }
+        total += amount;
+    }
+
+    public long estimate(long key) {
+        return estimateHash(Hashing.mix(key));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge a %dx%d sketch into %dx%d"
+                    .formatted(other.depth, other.width, depth, width));
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    public byte[] toByteArray() {
+        return SketchIO.toByteArray(this::writeTo);
+    }
+
+    public static CountMinSketch fromByteArray(byte[] bytes) {
+        return SketchIO.fromByteArray(bytes, CountMinSketch::readFrom);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        SketchIO.writeHeader(out, TYPE);
+        SketchIO.writeVarLong(out, depth);
+        SketchIO.writeVarLong(out, width);
+        SketchIO.writeVarLong(out, total);
+        for (long counter : counters) {
+            SketchIO.writeVarLong(out, counter);
+        }
+    }
+
+    static CountMinSketch readFrom(DataInput in) throws IOException {
+        SketchIO.readHeader(in, TYPE);
+        int depth = SketchIO.readVarInt(in, MAX_DEPTH);
+        int width = SketchIO.readVarInt(in, MAX_WIDTH);
+        CountMinSketch sketch;
+        try {
+            sketch = new CountMinSketch(depth, width);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        sketch.total = SketchIO.readVarLong(in);
+        for (int i = 0; i < sketch.counters.length; i++) {
+            sketch.counters[i] = SketchIO.readVarLong(in);
+        }
+        return sketch;
+    }
+
+    private long estimateHash(long hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[indexOf(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Row hashes are {@code h1 + row * h2} (Kirsch and Mitzenmacher), {@code h2}
+     * odd so that rows never share a column pattern.
+     */
+    private int indexOf(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+}
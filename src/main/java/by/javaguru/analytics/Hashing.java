@@ -0,0 +1,39 @@
+package by.javaguru.analytics;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * 64-bit hashes that are the same on every JVM, so sketches built on
+ * different nodes can be merged. {@code String.hashCode} is only 32 bits and
+ * its low bits are poorly spread.
+ */
+@UtilityClass
+class Hashing {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * FNV-1a over the UTF-16 code units, finished with {@link #mix(long)}.
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, every input bit affects every output bit.
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
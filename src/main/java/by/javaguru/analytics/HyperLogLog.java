@@ -0,0 +1,167 @@
+package by.javaguru.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Estimates the number of distinct values with 2<sup>precision</sup> one-byte
+ * registers. The standard error is about {@code 1.04 / sqrt(2^precision)}, so
+ * precision 14 gives 0.8% in 16 KB. Small cardinalities fall back to linear
+ * counting. Two sketches of the same precision merge without loss.
+ * <p>
+ * Not thread-safe.
+ */
+public class HyperLogLog {
+    private static final char TYPE = 'H';
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+    private static final int DENSE = 0;
+    private static final int SPARSE = 1;
+    // a sparse register is written as an index varint of up to 3 bytes and a value byte
+    private static final int SPARSE_ENTRY_BYTES = 4;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be within %d..%d, got %d"
+                    .formatted(MIN_PRECISION, MAX_PRECISION, precision));
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(String value) {
+        addHash(Hashing.hash(value));
+    }
+
+    public void add(long value) {
+        addHash(Hashing.mix(value));
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the guard bit caps the rank at 64 - precision + 1 when the remaining bits are all zero
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision %d into %d".formatted(other.precision, precision));
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Writes only the non-empty registers while that is shorter than all of them.
+     */
+    public byte[] toByteArray() {
+        return SketchIO.toByteArray(this::writeTo);
+    }
+
+    public static HyperLogLog fromByteArray(byte[] bytes) {
+        return SketchIO.fromByteArray(bytes, HyperLogLog::readFrom);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        SketchIO.writeHeader(out, TYPE);
+        out.writeByte(precision);
+
+        int used = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                used++;
+            }
+        }
+        if ((long) used * SPARSE_ENTRY_BYTES >= registers.length) {
+            out.writeByte(DENSE);
+            out.write(registers);
+            return;
+        }
+
+        out.writeByte(SPARSE);
+        SketchIO.writeVarLong(out, used);
+        int previous = 0;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != 0) {
+                SketchIO.writeVarLong(out, i - previous);
+                out.writeByte(registers[i]);
+                previous = i;
+            }
+        }
+    }
+
+    static HyperLogLog readFrom(DataInput in) throws IOException {
+        SketchIO.readHeader(in, TYPE);
+        int precision = in.readUnsignedByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Precision %d is out of range".formatted(precision));
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        int maxRank = 64 - precision + 1;
+
+        int encoding = in.readUnsignedByte();
+        if (encoding == DENSE) {
+            in.readFully(sketch.registers);
+            for (byte register : sketch.registers) {
+                if (register < 0 || register > maxRank) {
+                    throw new IOException("Register value %d is out of range".formatted(register));
+                }
+            }
+        } else if (encoding == SPARSE) {
+            int used = SketchIO.readVarInt(in, sketch.registers.length);
+            int index = 0;
+            for (int i = 0; i < used; i++) {
+                index += SketchIO.readVarInt(in, sketch.registers.length - 1 - index);
+                int register = in.readUnsignedByte();
+                if (register > maxRank) {
+                    throw new IOException("Register value %d is out of range".formatted(register));
+                }
+                sketch.registers[index] = (byte) register;
+            }
+        } else {
+            throw new IOException("Unknown register encoding " + encoding);
+        }
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+}
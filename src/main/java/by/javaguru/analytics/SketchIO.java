@@ -0,0 +1,96 @@
+package by.javaguru.analytics;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Byte format shared by the sketches: a type byte, a format version byte and
+ * the sketch body. Counters are written as unsigned LEB128 varints, so the
+ * mostly small or empty counters of a sketch take one byte each.
+ */
+@UtilityClass
+class SketchIO {
+    private static final int VERSION = 1;
+
+    @FunctionalInterface
+    interface Writer {
+        void write(DataOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    static byte[] toByteArray(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static <T> T fromByteArray(byte[] bytes, Reader<T> reader) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            T sketch = reader.read(in);
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("%d trailing bytes after sketch".formatted(in.available()));
+            }
+            return sketch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed sketch", e);
+        }
+    }
+
+    static void writeHeader(DataOutput out, char type) throws IOException {
+        out.writeByte(type);
+        out.writeByte(VERSION);
+    }
+
+    static void readHeader(DataInput in, char type) throws IOException {
+        int actualType = in.readUnsignedByte();
+        int version = in.readUnsignedByte();
+        if (actualType != type || version != VERSION) {
+            throw new IllegalArgumentException("Expected sketch %s version %d, got %s version %d"
+                    .formatted(type, VERSION, (char) actualType, version));
+        }
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is longer than 10 bytes");
+    }
+
+    static int readVarInt(DataInput in, int max) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > max) {
+            throw new IOException("Value %d is out of range 0..%d".formatted(value, max));
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,173 @@
+package by.javaguru.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent items (Metwally et al.). At most
+ * {@code capacity} items are counted; a new item replaces the one with the
+ * lowest count and inherits that count as its error. Every item seen more
+ * than {@code total / capacity} times is kept, and a reported count is at most
+ * {@link Entry#error()} above the real one. Summaries merge as described by
+ * Agarwal et al., "Mergeable Summaries".
+ * <p>
+ * Replacing an item scans all counters, so capacities are meant to be in the
+ * hundreds. Not thread-safe.
+ */
+public class SpaceSaving {
+    private static final char TYPE = 'S';
+    private static final int MAX_CAPACITY = 1 << 16;
+    private static final Comparator<Entry> BY_COUNT = Comparator.comparingLong(Entry::count).reversed()
+            .thenComparing(Entry::item);
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+
+    /**
+     * @param count upper bound of the occurrences of the item
+     * @param error how much {@code count} may exceed the real number
+     */
+    public record Entry(String item, long count, long error) {
+    }
+
+    private static final class Counter {
+        private long count;
+        private long error;
+
+        private Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be within 1..%d, got %d"
+                    .formatted(MAX_CAPACITY, capacity));
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String item) {
+        add(item, 1);
+    }
+
+    public void add(String item, long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative, got " + weight);
+        }
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(item, new Counter(weight, 0));
+            return;
+        }
+
+        String evicted = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (entry.getValue().count < min) {
+                min = entry.getValue().count;
+                evicted = entry.getKey();
+            }
+        }
+        counters.remove(evicted);
+        counters.put(item, new Counter(min + weight, min));
+    }
+
+    /**
+     * Returns up to {@code limit} items, the most frequent first and ties by item.
+     */
+    public List<Entry> top(int limit) {
+        return entries().stream()
+                .sorted(BY_COUNT)
+                .limit(limit)
+                .toList();
+    }
+
+    public void merge(SpaceSaving other) {
+        long minCount = minCount();
+        long otherMinCount = other.minCount();
+
+        List<Entry> merged = new ArrayList<>(counters.size() + other.counters.size());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter mine = entry.getValue();
+            Counter theirs = other.counters.get(entry.getKey());
+            merged.add(theirs == null
+                    ? new Entry(entry.getKey(), mine.count + otherMinCount, mine.error + otherMinCount)
+                    : new Entry(entry.getKey(), mine.count + theirs.count, mine.error + theirs.error));
+        }
+        for (Map.Entry<String, Counter> entry : other.counters.entrySet()) {
+            if (!counters.containsKey(entry.getKey())) {
+                Counter theirs = entry.getValue();
+                merged.add(new Entry(entry.getKey(), theirs.count + minCount, theirs.error + minCount));
+            }
+        }
+
+        merged.sort(BY_COUNT);
+        counters.clear();
+        for (Entry entry : merged.subList(0, Math.min(capacity, merged.size()))) {
+            counters.put(entry.item(), new Counter(entry.count(), entry.error()));
+        }
+    }
+
+    public byte[] toByteArray() {
+        return SketchIO.toByteArray(this::writeTo);
+    }
+
+    public static SpaceSaving fromByteArray(byte[] bytes) {
+        return SketchIO.fromByteArray(bytes, SpaceSaving::readFrom);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        SketchIO.writeHeader(out, TYPE);
+        SketchIO.writeVarLong(out, capacity);
+        SketchIO.writeVarLong(out, counters.size());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            out.writeUTF(entry.getKey());
+            SketchIO.writeVarLong(out, entry.getValue().count);
+            SketchIO.writeVarLong(out, entry.getValue().error);
+        }
+    }
+
+    static SpaceSaving readFrom(DataInput in) throws IOException {
+        SketchIO.readHeader(in, TYPE);
+        int capacity = SketchIO.readVarInt(in, MAX_CAPACITY);
+        if (capacity < 1) {
+            throw new IOException("Capacity must be positive");
+        }
+        SpaceSaving sketch = new SpaceSaving(capacity);
+        int size = SketchIO.readVarInt(in, capacity);
+        for (int i = 0; i < size; i++) {
+            String item = in.readUTF();
+            sketch.counters.put(item, new Counter(SketchIO.readVarLong(in), SketchIO.readVarLong(in)));
+        }
+        return sketch;
+    }
+
+    private List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(counters.size());
+        counters.forEach((item, counter) -> entries.add(new Entry(item, counter.count, counter.error)));
+        return entries;
+    }
+
+    /**
+     * Lowest count of a full summary, the most an uncounted item can have occurred.
+     */
+    private long minCount() {
+        if (counters.size() < capacity) {
+            return 0;
+        }
+        return counters.values().stream().mapToLong(counter -> counter.count).min().orElse(0);
+    }
+}
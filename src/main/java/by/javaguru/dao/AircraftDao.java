@@ -2,6 +2,7 @@ package by.javaguru.dao;
 
 import by.javaguru.entity.Aircraft;
 import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +13,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class AircraftDao implements Dao<Integer, Aircraft> {
     private static final AircraftDao INSTANCE = new AircraftDao();
-    private static final Connection connection = ConnectionManager.open();
     private static final Logger logger = LoggerFactory.getLogger(AircraftDao.class);
     private static final String INSERT_SQL = """
             INSERT INTO aircraft (model)
@@ -37,10 +40,16 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
             SELECT id, model
             FROM aircraft
             """;
+    // positions of the FIND_ALL_SQL columns, every aircraft query selects them in this order
+    private static final int ID_COLUMN = 1;
+    private static final int MODEL_COLUMN = 2;
     private static final String FIND_BY_ID_SQL =
             FIND_ALL_SQL + "WHERE id = ?";
+    private static final String FIND_ALL_BY_ID_SQL =
+            FIND_ALL_SQL + "WHERE id = ANY(?)";
 
     private AircraftDao() {
+        QueryMetrics.getInstance().registerSqlConstants(AircraftDao.class);
     }
 
     public static AircraftDao getInstance() {
@@ -49,10 +58,13 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
 
     @Override
     public Aircraft save(Aircraft aircraft) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
                 Statement.RETURN_GENERATED_KEYS)) {
-            logger.info("Saving aircraft to database");
-            logger.debug("{}", aircraft);
+            logger.debug("Saving aircraft to database");
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", aircraft);
+            }
 
             statement.setString(1, aircraft.getModel());
 
@@ -61,7 +73,7 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
 
             if (generatedKeys.next()) {
                 aircraft.setId(generatedKeys.getInt("id"));
-                logger.info("Aircraft was saved");
+                logger.debug("Aircraft was saved");
                 return aircraft;
             }
 
@@ -71,10 +83,25 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
         }
     }
 
+    @Override
+    public List<Aircraft> saveAll(Collection<Aircraft> aircrafts) {
+        try {
+            logger.info("Saving {} aircrafts to database", aircrafts.size());
+            return BatchInsert.execute(INSERT_SQL, aircrafts,
+                    (statement, aircraft) -> statement.setString(1, aircraft.getModel()),
+                    (generatedKeys, aircraft) -> aircraft.setId(generatedKeys.getInt("id")));
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public boolean update(Integer id, Aircraft aircraft) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
-            logger.info("Updating aircraft with id {} to model {}", id, aircraft.getModel());
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Updating aircraft with id {} to model {}", id, aircraft.getModel());
+            }
 
             statement.setString(1, aircraft.getModel());
             statement.setInt(2, id);
@@ -87,8 +114,9 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
 
     @Override
     public boolean delete(Integer id) {
-        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
-            logger.info("Deleting aircraft with id {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            logger.debug("Deleting aircraft with id {}", id);
             statement.setInt(1, id);
             return statement.executeUpdate() > 0;
         } catch (SQLException e) {
@@ -98,8 +126,9 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
 
     @Override
     public Optional<Aircraft> findById(Integer id) {
-        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
-            logger.info("Starting to find aircraft with id {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
+            logger.debug("Starting to find aircraft with id {}", id);
 
             statement.setInt(1, id);
 
@@ -107,12 +136,11 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
             Aircraft aircraft = null;
 
             if (result.next()) {
-                aircraft = Aircraft.builder()
-                        .id(result.getInt("id"))
-                        .model(result.getString("model"))
-                        .build();
+                aircraft = readAircraft(result);
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", aircraft);
             }
-            logger.debug("{}", aircraft);
 
             return Optional.ofNullable(aircraft);
         } catch (SQLException e) {
@@ -120,25 +148,62 @@ public class AircraftDao implements Dao<Integer, Aircraft> {
         }
     }
 
+    @Override
+    public Map<Integer, Aircraft> findAllById(Collection<Integer> ids) {
+        Map<Integer, Aircraft> aircrafts = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return aircrafts;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find {} aircrafts by id", ids.size());
+            }
+
+            statement.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+            ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Aircraft aircraft = readAircraft(result);
+                aircrafts.put(aircraft.getId(), aircraft);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} aircrafts", aircrafts.size());
+            }
+
+            return aircrafts;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public List<Aircraft> findAll() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Starting to find all aircrafts");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL)) {
+            logger.debug("Starting to find all aircrafts");
 
             List<Aircraft> aircrafts = new ArrayList<>();
-            ResultSet result = statement.executeQuery(FIND_ALL_SQL);
+            ResultSet result = statement.executeQuery();
 
             while (result.next()) {
-                aircrafts.add(Aircraft.builder()
-                        .id(result.getInt("id"))
-                        .model(result.getString("model"))
-                        .build());
+                aircrafts.add(readAircraft(result));
             }
 
-            logger.debug("Found {} aircraft", aircrafts.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} aircraft", aircrafts.size());
+            }
             return aircrafts;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
+
+    private static Aircraft readAircraft(ResultSet result) throws SQLException {
+        return Aircraft.builder()
+                .id(result.getInt(ID_COLUMN))
+                .model(result.getString(MODEL_COLUMN))
+                .build();
+    }
 }
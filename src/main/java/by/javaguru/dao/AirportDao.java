@@ -2,6 +2,7 @@ package by.javaguru.dao;
 
 import by.javaguru.entity.Airport;
 import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,19 +11,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-public class AirportDao implements Dao<String, Airport> {
+public class AirportDao implements UpsertDao<String, Airport> {
     private static final AirportDao INSTANCE = new AirportDao();
-    private static final Connection connection = ConnectionManager.open();
     private static final Logger logger = LoggerFactory.getLogger(AirportDao.class);
     private static final String INSERT_SQL = """
             INSERT INTO airport (code, country, city)
             VALUES (?, ?, ?)
             """;
+    private static final String UPSERT_SQL = INSERT_SQL + """
+            ON CONFLICT (code) DO UPDATE
+            SET
+                country = EXCLUDED.country,
+                city = EXCLUDED.city
+            """;
 
     private static final String DELETE_SQL = """
             DELETE FROM airport
@@ -41,10 +49,17 @@ public class AirportDao implements Dao<String, Airport> {
             SELECT code, country, city
             FROM airport
             """;
+    // positions of the FIND_ALL_SQL columns, every airport query selects them in this order
+    private static final int CODE_COLUMN = 1;
+    private static final int COUNTRY_COLUMN = 2;
+    private static final int CITY_COLUMN = 3;
     private static final String FIND_BY_ID_SQL =
             FIND_ALL_SQL + "WHERE code = ?";
+    private static final String FIND_ALL_BY_ID_SQL =
+            FIND_ALL_SQL + "WHERE code = ANY(?)";
 
     private AirportDao() {
+        QueryMetrics.getInstance().registerSqlConstants(AirportDao.class);
     }
 
     public static AirportDao getInstance() {
@@ -53,33 +68,77 @@ public class AirportDao implements Dao<String, Airport> {
 
     @Override
     public Airport save(Airport airport) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
-            logger.info("Saving airport to database");
-            logger.debug("{}", airport);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+            logger.debug("Saving airport to database");
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", airport);
+            }
 
-            statement.setString(1, airport.getCode());
-            statement.setString(2, airport.getCountry());
-            statement.setString(3, airport.getCity());
+            setStatementParameters(statement, airport);
 
             statement.executeUpdate();
 
-            logger.info("Airport was saved");
+            logger.debug("Airport was saved");
+            return airport;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public List<Airport> saveAll(Collection<Airport> airports) {
+        try {
+            logger.info("Saving {} airports to database", airports.size());
+            return BatchInsert.execute(INSERT_SQL, airports, AirportDao::setStatementParameters);
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Inserts the airport, or overwrites the country and city of the airport
+     * with the same code.
+     */
+    @Override
+    public Airport upsert(Airport airport) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+            logger.debug("Upserting airport {}", airport.getCode());
+            setStatementParameters(statement, airport);
+            statement.executeUpdate();
             return airport;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
 
+    @Override
+    public List<Airport> upsertAll(Collection<Airport> airports) {
+        try {
+            logger.debug("Upserting {} airports", airports.size());
+            return BatchInsert.execute(UPSERT_SQL, BatchInsert.lastPerKey(airports, Airport::getCode),
+                    AirportDao::setStatementParameters);
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public boolean update(String id, Airport airport) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
-            logger.info("Updating airport with code {}", airport.getCode());
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Updating airport with code {}", airport.getCode());
+            }
 
             statement.setString(1, airport.getCountry());
             statement.setString(2, airport.getCity());
             statement.setString(3, airport.getCode());
 
-            logger.debug("Airport with code {} after updating {}", airport.getCode(), airport);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Airport with code {} after updating {}", airport.getCode(), airport);
+            }
 
             return statement.executeUpdate() > 0;
         } catch (SQLException e) {
@@ -89,8 +148,9 @@ public class AirportDao implements Dao<String, Airport> {
 
     @Override
     public boolean delete(String code) {
-        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
-            logger.info("Deleting airport with code {}", code);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            logger.debug("Deleting airport with code {}", code);
             statement.setString(1, code);
             return statement.executeUpdate() > 0;
         } catch (SQLException e) {
@@ -100,8 +160,9 @@ public class AirportDao implements Dao<String, Airport> {
 
     @Override
     public Optional<Airport> findById(String id) {
-        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
-            logger.info("Starting to find airport with code {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
+            logger.debug("Starting to find airport with code {}", id);
 
             statement.setString(1, id);
             ResultSet result = statement.executeQuery();
@@ -110,7 +171,9 @@ public class AirportDao implements Dao<String, Airport> {
             if (result.next()) {
                 airport = readAirport(result);
             }
-            logger.debug("{}", airport);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", airport);
+            }
 
             return Optional.ofNullable(airport);
         } catch (SQLException e) {
@@ -118,19 +181,52 @@ public class AirportDao implements Dao<String, Airport> {
         }
     }
 
+    @Override
+    public Map<String, Airport> findAllById(Collection<String> ids) {
+        Map<String, Airport> airports = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return airports;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find {} airports by code", ids.size());
+            }
+
+            statement.setArray(1, connection.createArrayOf("varchar", ids.toArray()));
+            ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Airport airport = readAirport(result);
+                airports.put(airport.getCode(), airport);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} airports", airports.size());
+            }
+
+            return airports;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public List<Airport> findAll() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Starting to find all airports");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL)) {
+            logger.debug("Starting to find all airports");
 
             List<Airport> airports = new ArrayList<>();
-            ResultSet result = statement.executeQuery(FIND_ALL_SQL);
+            ResultSet result = statement.executeQuery();
 
             while (result.next()) {
                 airports.add(readAirport(result));
             }
 
-            logger.debug("Found {} airports", airports.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} airports", airports.size());
+            }
             return airports;
         } catch (SQLException e) {
             throw new DaoException(e);
@@ -139,9 +235,15 @@ public class AirportDao implements Dao<String, Airport> {
 
     private Airport readAirport(ResultSet result) throws SQLException {
         return Airport.builder()
-                .code(result.getString("code"))
-                .country(result.getString("country"))
-                .city(result.getString("city"))
+                .code(result.getString(CODE_COLUMN))
+                .country(result.getString(COUNTRY_COLUMN))
+                .city(result.getString(CITY_COLUMN))
                 .build();
     }
+
+    private static void setStatementParameters(PreparedStatement statement, Airport airport) throws SQLException {
+        statement.setString(1, airport.getCode());
+        statement.setString(2, airport.getCountry());
+        statement.setString(3, airport.getCity());
+    }
 }
@@ -0,0 +1,56 @@
+package by.javaguru.dao;
+
+import by.javaguru.util.AsyncQueryExecutor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous companion of a {@link Dao}. Every call runs on a virtual thread
+ * of an {@link AsyncQueryExecutor}, and cancelling a returned future cancels
+ * the statement it is running.
+ */
+public class AsyncDao<K, E> {
+    private final Dao<K, E> delegate;
+    private final AsyncQueryExecutor executor;
+
+    public AsyncDao(Dao<K, E> delegate) {
+        this(delegate, AsyncQueryExecutor.getInstance());
+    }
+
+    public AsyncDao(Dao<K, E> delegate, AsyncQueryExecutor executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<E> save(E entity) {
+        return executor.submit(() -> delegate.save(entity));
+    }
+
+    public CompletableFuture<List<E>> saveAll(Collection<E> entities) {
+        return executor.submit(() -> delegate.saveAll(entities));
+    }
+
+    public CompletableFuture<Boolean> update(K key, E entity) {
+        return executor.submit(() -> delegate.update(key, entity));
+    }
+
+    public CompletableFuture<Boolean> delete(K id) {
+        return executor.submit(() -> delegate.delete(id));
+    }
+
+    public CompletableFuture<Optional<E>> findById(K id) {
+        return executor.submit(() -> delegate.findById(id));
+    }
+
+    public CompletableFuture<Map<K, E>> findAllById(Collection<K> ids) {
+        return executor.submit(() -> delegate.findAllById(ids));
+    }
+
+    public CompletableFuture<List<E>> findAll() {
+        return executor.submit(delegate::findAll);
+    }
+}
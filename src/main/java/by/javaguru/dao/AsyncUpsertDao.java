@@ -0,0 +1,33 @@
+package by.javaguru.dao;
+
+import by.javaguru.util.AsyncQueryExecutor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous companion of an {@link UpsertDao}.
+ */
+public class AsyncUpsertDao<K, E> extends AsyncDao<K, E> {
+    private final UpsertDao<K, E> delegate;
+    private final AsyncQueryExecutor executor;
+
+    public AsyncUpsertDao(UpsertDao<K, E> delegate) {
+        this(delegate, AsyncQueryExecutor.getInstance());
+    }
+
+    public AsyncUpsertDao(UpsertDao<K, E> delegate, AsyncQueryExecutor executor) {
+        super(delegate, executor);
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<E> upsert(E entity) {
+        return executor.submit(() -> delegate.upsert(entity));
+    }
+
+    public CompletableFuture<List<E>> upsertAll(Collection<E> entities) {
+        return executor.submit(() -> delegate.upsertAll(entities));
+    }
+}
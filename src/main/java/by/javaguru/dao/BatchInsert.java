@@ -0,0 +1,103 @@
+package by.javaguru.dao;
+
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.PropertiesUtil;
+import lombok.experimental.UtilityClass;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Runs an INSERT statement for many entities with JDBC batching, flushing every
+ * {@code db.batch.size} rows. With {@code db.reWriteBatchedInserts=true} the driver
+ * rewrites each flushed batch into a multi-row {@code INSERT ... VALUES (...), (...)}.
+ */
+@UtilityClass
+class BatchInsert {
+    private static final String BATCH_SIZE_KEY = "db.batch.size";
+    private static final int BATCH_SIZE = PropertiesUtil.getInt(BATCH_SIZE_KEY, 500);
+
+    @FunctionalInterface
+    interface ParameterBinder<E> {
+        void bind(PreparedStatement statement, E entity) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface KeyReader<E> {
+        void read(ResultSet generatedKeys, E entity) throws SQLException;
+    }
+
+    /**
+     * Keeps the last of the entities sharing a key, because one multi-row
+     * {@code INSERT ... ON CONFLICT DO UPDATE} cannot touch a row twice.
+     */
+    static <E, K> List<E> lastPerKey(Collection<E> entities, Function<E, K> keyOf) {
+        Map<K, E> byKey = new LinkedHashMap<>();
+        for (E entity : entities) {
+            byKey.put(keyOf.apply(entity), entity);
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    static <E> List<E> execute(String sql, Collection<E> entities, ParameterBinder<E> binder) throws SQLException {
+        return execute(sql, entities, binder, null);
+    }
+
+    /**
+     * Inserts all entities in one transaction. When {@code keyReader} is given,
+     * generated keys are written back to the entities in insertion order.
+     */
+    static <E> List<E> execute(String sql, Collection<E> entities, ParameterBinder<E> binder,
+                               KeyReader<E> keyReader) throws SQLException {
+        List<E> saved = new ArrayList<>(entities);
+        if (saved.isEmpty()) {
+            return saved;
+        }
+
+        try (Connection connection = ConnectionManager.open()) {
+            connection.setAutoCommit(false);
+
+            int keysMode = keyReader == null ? Statement.NO_GENERATED_KEYS : Statement.RETURN_GENERATED_KEYS;
+            try (PreparedStatement statement = connection.prepareStatement(sql, keysMode)) {
+                for (int from = 0; from < saved.size(); from += BATCH_SIZE) {
+                    List<E> chunk = saved.subList(from, Math.min(from + BATCH_SIZE, saved.size()));
+                    for (E entity : chunk) {
+                        binder.bind(statement, entity);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+
+                    if (keyReader != null) {
+                        readKeys(statement, chunk, keyReader);
+                    }
+                }
+                connection.commit();
+                return saved;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static <E> void readKeys(PreparedStatement statement, List<E> chunk,
+                                     KeyReader<E> keyReader) throws SQLException {
+        try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+            for (E entity : chunk) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Expected %d generated keys".formatted(chunk.size()));
+                }
+                keyReader.read(generatedKeys, entity);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package by.javaguru.dao;
+
+import by.javaguru.entity.Ticket;
+import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Books seats without failing on the {@code UNIQUE (flight_id, seat_no)}
+ * constraint: a taken seat makes the insert return no row instead of an
+ * error. Bookings for the same flight are serialized on one of
+ * {@code db.booking.lockStripes} locks, so threads of this JVM do not race
+ * each other for a seat, and seats are checked against and picked from
+ * {@link SeatAvailability} before the database is asked. Conflicts are then
+ * left to writers outside this JVM or outside this class.
+ */
+public class BookingDao {
+    private static final Logger logger = LoggerFactory.getLogger(BookingDao.class);
+    private static final String LOCK_STRIPES_KEY = "db.booking.lockStripes";
+    private static final int CANDIDATE_BATCH = 8;
+    private static final String BOOK_SQL = """
+            INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (flight_id, seat_no) DO NOTHING
+            RETURNING id
+            """;
+    private static final String PARTITIONED_BOOK_SQL = """
+            INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost, departure_date)
+            VALUES (?, ?, ?, ?, ?, (SELECT departure_date FROM flight WHERE id = ?))
+            ON CONFLICT (flight_id, seat_no, departure_date) DO NOTHING
+            RETURNING id
+            """;
+    private static final boolean PARTITIONED = PartitionMaintenance.isEnabled();
+    private static final String bookSql = PARTITIONED ? PARTITIONED_BOOK_SQL : BOOK_SQL;
+    private static final BookingDao INSTANCE = new BookingDao(PropertiesUtil.getInt(LOCK_STRIPES_KEY, 64));
+
+    private final SeatAvailability seatAvailability = SeatAvailability.getInstance();
+    private final TicketAnalytics analytics = TicketAnalytics.getInstance();
+    private final ReentrantLock[] stripes;
+    private final LongAdder bookings = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    private BookingDao(int stripeCount) {
+        stripes = new ReentrantLock[Integer.highestOneBit(Math.max(stripeCount, 1))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        QueryMetrics.getInstance().registerSqlConstants(BookingDao.class);
+    }
+
+    public static BookingDao getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Books exactly the seat of the ticket. Returns the saved ticket, or an
+     * empty optional when the seat is already taken.
+     */
+    public Optional<Ticket> book(Ticket ticket) {
+        ReentrantLock lock = stripeOf(ticket.getFlightId());
+        lock.lock();
+        try {
+            return tryBook(ticket) ? Optional.of(ticket) : Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Books the seat of the ticket, or the first free seat of the flight when
+     * that one is taken or not set. Returns an empty optional when the flight
+     * is sold out.
+     */
+    public Optional<Ticket> bookAnySeat(Ticket ticket) {
+        ReentrantLock lock = stripeOf(ticket.getFlightId());
+        lock.lock();
+        try {
+            if (ticket.getSeatNo() != null && tryBook(ticket)) {
+                return Optional.of(ticket);
+            }
+
+            Set<String> tried = new HashSet<>();
+            if (ticket.getSeatNo() != null) {
+                tried.add(ticket.getSeatNo());
+            }
+            while (true) {
+                // seats that lost a race may still look free until the bitmap catches up, skip them
+                List<String> candidates = seatAvailability.findFreeSeats(ticket.getFlightId(),
+                        tried.size() + CANDIDATE_BATCH);
+                candidates.removeAll(tried);
+                if (candidates.isEmpty()) {
+                    logger.debug("Flight {} is sold out", ticket.getFlightId());
+                    return Optional.empty();
+                }
+
+                for (String seatNo : candidates) {
+                    tried.add(seatNo);
+                    ticket.setSeatNo(seatNo);
+                    if (insert(ticket)) {
+                        return Optional.of(ticket);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBookingCount() {
+        return bookings.sum();
+    }
+
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    private boolean tryBook(Ticket ticket) {
+        return seatAvailability.isFree(ticket.getFlightId(), ticket.getSeatNo()) && insert(ticket);
+    }
+
+    private boolean insert(Ticket ticket) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(bookSql)) {
+            statement.setString(1, ticket.getPassportNo());
+            statement.setString(2, ticket.getPassengerName());
+            statement.setLong(3, ticket.getFlightId());
+            statement.setString(4, ticket.getSeatNo());
+            statement.setInt(5, ticket.getCost());
+            if (PARTITIONED) {
+                statement.setLong(6, ticket.getFlightId());
+            }
+
+            ResultSet result = statement.executeQuery();
+            if (!result.next()) {
+                conflicts.increment();
+                seatAvailability.seatTaken(ticket.getFlightId(), ticket.getSeatNo());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Seat {} of flight {} is already taken", ticket.getSeatNo(), ticket.getFlightId());
+                }
+                return false;
+            }
+
+            ticket.setId(result.getLong(1));
+            bookings.increment();
+            seatAvailability.ticketSaved(ticket);
+            analytics.ticketSaved(ticket);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Booked seat {} of flight {}. Ticket ID = {}",
+                        ticket.getSeatNo(), ticket.getFlightId(), ticket.getId());
+            }
+            return true;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private ReentrantLock stripeOf(Long flightId) {
+        int hash = Long.hashCode(flightId);
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,281 @@
+package by.javaguru.dao;
+
+import by.javaguru.dto.CacheStats;
+import by.javaguru.entity.Aircraft;
+import by.javaguru.entity.Airport;
+import by.javaguru.entity.Seat;
+import by.javaguru.util.PropertiesUtil;
+import by.javaguru.util.TransactionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-through LRU cache with a time-to-live in front of a reference data DAO.
+ * Writes through this DAO invalidate the affected entries; inside a
+ * {@link TransactionTemplate} transaction the entries are not cached again
+ * until it completes. Entities are copied on the way in and out, so callers
+ * may modify what they get back.
+ */
+public class CachingDao<K, E> implements Dao<K, E> {
+    private static final Logger logger = LoggerFactory.getLogger(CachingDao.class);
+    private static final String MAX_SIZE_KEY = "cache.%s.maxSize";
+    private static final String TTL_KEY = "cache.%s.ttlMs";
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+    private static final long DEFAULT_TTL_MS = 3_600_000;
+
+    private static final CachingUpsertDao<String, Airport> AIRPORTS = new CachingUpsertDao<>("airport",
+            AirportDao.getInstance(), Airport::getCode, airport -> airport.toBuilder().build(),
+            maxSizeOf("airport"), ttlMsOf("airport"));
+    private static final CachingDao<Integer, Aircraft> AIRCRAFTS = new CachingDao<>("aircraft",
+            AircraftDao.getInstance(), Aircraft::getId, aircraft -> aircraft.toBuilder().build(),
+            maxSizeOf("aircraft"), ttlMsOf("aircraft"));
+    private static final CachingUpsertDao<Seat, Seat> SEATS = new CachingUpsertDao<>("seat",
+            SeatDao.getInstance(), seat -> seat.toBuilder().build(), seat -> seat.toBuilder().build(),
+            maxSizeOf("seat"), ttlMsOf("seat"));
+
+    private final String name;
+    private final Dao<K, E> delegate;
+    private final Function<E, K> keyOf;
+    private final UnaryOperator<E> copier;
+    private final long ttlNanos;
+    private final Map<K, Entry<E>> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loads;
+    private long totalLoadNanos;
+    // bumped on every invalidation so that a load racing with a write is not cached
+    private long generation;
+    // keys written by transactions that have not completed yet, with the number of such writes
+    private final Map<K, Integer> pending = new HashMap<>();
+
+    private record Entry<E>(E value, long loadedAt) {
+    }
+
+    public CachingDao(String name, Dao<K, E> delegate, Function<E, K> keyOf, UnaryOperator<E> copier,
+                      int maxSize, long ttlMs) {
+        this.name = name;
+        this.delegate = delegate;
+        this.keyOf = keyOf;
+        this.copier = copier;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<E>> eldest) {
+                if (size() > maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static CachingUpsertDao<String, Airport> airports() {
+        return AIRPORTS;
+    }
+
+    public static CachingDao<Integer, Aircraft> aircrafts() {
+        return AIRCRAFTS;
+    }
+
+    public static CachingUpsertDao<Seat, Seat> seats() {
+        return SEATS;
+    }
+
+    /**
+     * Loads the whole table into the cache, meant to be called once at startup.
+     */
+    public int warmUp() {
+        List<E> all = findAll();
+        logger.info("Cache {} warmed up with {} entries", name, all.size());
+        return all.size();
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, loads, totalLoadNanos, entries.size());
+    }
+
+    @Override
+    public Optional<E> findById(K id) {
+        long loadGeneration;
+        synchronized (this) {
+            E cached = get(id);
+            if (cached != null) {
+                hits++;
+                return Optional.of(copier.apply(cached));
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        long start = System.nanoTime();
+        Optional<E> loaded = delegate.findById(id);
+        synchronized (this) {
+            recordLoad(start);
+            if (loadGeneration == generation) {
+                loaded.ifPresent(this::put);
+            }
+        }
+        return loaded.map(copier);
+    }
+
+    @Override
+    public Map<K, E> findAllById(Collection<K> ids) {
+        Map<K, E> found = new LinkedHashMap<>();
+        List<K> missing = new ArrayList<>();
+        long loadGeneration;
+        synchronized (this) {
+            for (K id : ids) {
+                E cached = get(id);
+                if (cached != null) {
+                    hits++;
+                    found.put(id, copier.apply(cached));
+                } else {
+                    misses++;
+                    missing.add(id);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        long start = System.nanoTime();
+        Map<K, E> loaded = delegate.findAllById(missing);
+        synchronized (this) {
+            recordLoad(start);
+            if (loadGeneration == generation) {
+                loaded.values().forEach(this::put);
+            }
+        }
+        loaded.forEach((key, entity) -> found.put(key, copier.apply(entity)));
+        return found;
+    }
+
+    @Override
+    public List<E> findAll() {
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+
+        long start = System.nanoTime();
+        List<E> all = delegate.findAll();
+        synchronized (this) {
+            recordLoad(start);
+            if (loadGeneration == generation) {
+                all.forEach(this::put);
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public E save(E entity) {
+        E saved = delegate.save(entity);
+        invalidate(keyOf.apply(saved));
+        return saved;
+    }
+
+    @Override
+    public List<E> saveAll(Collection<E> entities) {
+        List<E> saved = delegate.saveAll(entities);
+        saved.forEach(entity -> invalidate(keyOf.apply(entity)));
+        return saved;
+    }
+
+    @Override
+    public boolean update(K key, E entity) {
+        try {
+            return delegate.update(key, entity);
+        } finally {
+            invalidate(key);
+            invalidate(keyOf.apply(entity));
+        }
+    }
+
+    @Override
+    public boolean delete(K id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    void invalidate(K key) {
+        if (!TransactionTemplate.isActive()) {
+            evict(key);
+            return;
+        }
+        synchronized (this) {
+            evict(key);
+            pending.merge(key, 1, Integer::sum);
+        }
+        TransactionTemplate.afterCompletion(() -> completed(key));
+    }
+
+    private synchronized void completed(K key) {
+        pending.computeIfPresent(key, (k, writes) -> writes == 1 ? null : writes - 1);
+        evict(key);
+    }
+
+    private synchronized void evict(K key) {
+        generation++;
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    private E get(K key) {
+        Entry<E> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.loadedAt() > ttlNanos) {
+            entries.remove(key);
+            evictions++;
+            return null;
+        }
+        return entry.value();
+    }
+
+    private void put(E entity) {
+        E copy = copier.apply(entity);
+        K key = keyOf.apply(copy);
+        // until the writing transaction completes, other readers still load the old row
+        if (!pending.containsKey(key)) {
+            entries.put(key, new Entry<>(copy, System.nanoTime()));
+        }
+    }
+
+    private void recordLoad(long start) {
+        loads++;
+        totalLoadNanos += System.nanoTime() - start;
+    }
+
+    private static int maxSizeOf(String name) {
+        return PropertiesUtil.getInt(MAX_SIZE_KEY.formatted(name), DEFAULT_MAX_SIZE);
+    }
+
+    private static long ttlMsOf(String name) {
+        return PropertiesUtil.getLong(TTL_KEY.formatted(name), DEFAULT_TTL_MS);
+    }
+}
@@ -0,0 +1,36 @@
+package by.javaguru.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link CachingDao} in front of a DAO with a natural key. Upserts through
+ * this DAO invalidate the affected entries like the other writes do.
+ */
+public class CachingUpsertDao<K, E> extends CachingDao<K, E> implements UpsertDao<K, E> {
+    private final UpsertDao<K, E> delegate;
+    private final Function<E, K> keyOf;
+
+    public CachingUpsertDao(String name, UpsertDao<K, E> delegate, Function<E, K> keyOf, UnaryOperator<E> copier,
+                            int maxSize, long ttlMs) {
+        super(name, delegate, keyOf, copier, maxSize, ttlMs);
+        this.delegate = delegate;
+        this.keyOf = keyOf;
+    }
+
+    @Override
+    public E upsert(E entity) {
+        E upserted = delegate.upsert(entity);
+        invalidate(keyOf.apply(upserted));
+        return upserted;
+    }
+
+    @Override
+    public List<E> upsertAll(Collection<E> entities) {
+        List<E> upserted = delegate.upsertAll(entities);
+        upserted.forEach(entity -> invalidate(keyOf.apply(entity)));
+        return upserted;
+    }
+}
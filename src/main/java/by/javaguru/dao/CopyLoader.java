@@ -0,0 +1,233 @@
+package by.javaguru.dao;
+
+import by.javaguru.dto.CopyResult;
+import by.javaguru.entity.Airport;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Seat;
+import by.javaguru.entity.Ticket;
+import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk loads entities with {@code COPY ... FROM STDIN}. Rows are encoded one by
+ * one into a fixed size buffer that is flushed to the server, so the payload is
+ * never held in memory as a whole.
+ */
+public class CopyLoader<E> {
+    private static final Logger logger = LoggerFactory.getLogger(CopyLoader.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final String COPY_SQL = "COPY %s (%s) FROM STDIN (FORMAT %s)";
+
+    // same columns as TicketDao.INSERT_SQL
+    private static final CopyLoader<Ticket> TICKETS = new CopyLoader<>("ticket", List.of(
+            new Column<>("passport_no", ColumnType.TEXT, Ticket::getPassportNo),
+            new Column<>("passenger_name", ColumnType.TEXT, Ticket::getPassengerName),
+            new Column<>("flight_id", ColumnType.INT8, Ticket::getFlightId),
+            new Column<>("seat_no", ColumnType.TEXT, Ticket::getSeatNo),
+            new Column<>("cost", ColumnType.INT4, Ticket::getCost)));
+
+    // same columns as FlightDao.INSERT_SQL
+    private static final CopyLoader<Flight> FLIGHTS = new CopyLoader<>("flight", List.of(
+            new Column<>("flight_no", ColumnType.TEXT, Flight::getFlightNo),
+            new Column<>("departure_date", ColumnType.TIMESTAMP, Flight::getDepartureDate),
+            new Column<>("departure_airport_code", ColumnType.TEXT, Flight::getDepartureAirportCode),
+            new Column<>("arrival_date", ColumnType.TIMESTAMP, Flight::getArrivalDate),
+            new Column<>("arrival_airport_code", ColumnType.TEXT, Flight::getArrivalAirportCode),
+            new Column<>("aircraft_id", ColumnType.INT8, Flight::getAircraftId),
+            new Column<>("status", ColumnType.TEXT, Flight::getStatus)));
+
+    // same columns as AirportDao.INSERT_SQL
+    private static final CopyLoader<Airport> AIRPORTS = new CopyLoader<>("airport", List.of(
+            new Column<>("code", ColumnType.TEXT, Airport::getCode),
+            new Column<>("country", ColumnType.TEXT, Airport::getCountry),
+            new Column<>("city", ColumnType.TEXT, Airport::getCity)));
+
+    // same columns as SeatDao.INSERT_SQL
+    private static final CopyLoader<Seat> SEATS = new CopyLoader<>("seat", List.of(
+            new Column<>("aircraft_id", ColumnType.INT4, Seat::getAircraftId),
+            new Column<>("seat_no", ColumnType.TEXT, Seat::getSeatNo)));
+
+    private final String table;
+    private final List<Column<E>> columns;
+
+    public enum Format {
+        TEXT, BINARY
+    }
+
+    private enum ColumnType {
+        TEXT, INT4, INT8, TIMESTAMP
+    }
+
+    private record Column<E>(String name, ColumnType type, Function<E, Object> extractor) {
+    }
+
+    private CopyLoader(String table, List<Column<E>> columns) {
+        this.table = table;
+        this.columns = columns;
+    }
+
+    /**
+     * COPY cannot look up the departure date that tickets of the partitioned
+     * schema carry, so tickets are only copied into the plain schema.
+     */
+    public static CopyLoader<Ticket> tickets() {
+        if (PartitionMaintenance.isEnabled()) {
+            throw new IllegalStateException("COPY of tickets is not supported by the partitioned schema");
+        }
+        return TICKETS;
+    }
+
+    public static CopyLoader<Flight> flights() {
+        return FLIGHTS;
+    }
+
+    public static CopyLoader<Airport> airports() {
+        return AIRPORTS;
+    }
+
+    public static CopyLoader<Seat> seats() {
+        return SEATS;
+    }
+
+    public CopyResult load(Iterable<E> entities, Format format) {
+        return load(entities.iterator(), format);
+    }
+
+    public CopyResult load(Iterator<E> entities, Format format) {
+        String columnList = columns.stream().map(Column::name).collect(Collectors.joining(", "));
+        String sql = COPY_SQL.formatted(table, columnList, format.name());
+
+        try (Connection connection = ConnectionManager.open()) {
+            logger.info("Starting to copy rows into {} in {} format", table, format);
+            long start = System.nanoTime();
+
+            PGCopyOutputStream copyStream = new PGCopyOutputStream(
+                    connection.unwrap(PGConnection.class), sql, BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(copyStream, BUFFER_SIZE));
+            long rows;
+            // not try-with-resources: closing the stream would commit a partially written COPY
+            try {
+                if (format == Format.BINARY) {
+                    writeBinary(entities, out);
+                } else {
+                    writeText(entities, out);
+                }
+                out.flush();
+                rows = copyStream.endCopy();
+            } catch (IOException | SQLException | RuntimeException e) {
+                if (copyStream.isActive()) {
+                    copyStream.cancelCopy();
+                }
+                QueryMetrics.getInstance().record(operationName(), sql, System.nanoTime() - start, 0, e);
+                throw e;
+            }
+
+            // copied rows bypass the DAO hooks that keep seat availability current
+            SeatAvailability.getInstance().seatsChanged();
+            CopyResult result = new CopyResult(rows, System.nanoTime() - start);
+            QueryMetrics.getInstance().record(operationName(), sql, result.getElapsedNanos(), rows, null);
+            logger.info("Copied {} rows into {} ({} rows/sec)", rows, table, Math.round(result.getRowsPerSecond()));
+            return result;
+        } catch (SQLException | IOException e) {
+            throw new DaoException("COPY into " + table + " failed", e);
+        }
+    }
+
+    private String operationName() {
+        return "CopyLoader." + table;
+    }
+
+    private void writeText(Iterator<E> entities, DataOutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        while (entities.hasNext()) {
+            E entity = entities.next();
+            line.setLength(0);
+
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    line.append('\t');
+                }
+                Object value = columns.get(i).extractor().apply(entity);
+                if (value == null) {
+                    line.append("\\N");
+                } else {
+                    appendEscaped(line, value.toString());
+                }
+            }
+            line.append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeBinary(Iterator<E> entities, DataOutputStream out) throws IOException {
+        out.write(BINARY_SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+
+        while (entities.hasNext()) {
+            E entity = entities.next();
+            out.writeShort(columns.size());
+
+            for (Column<E> column : columns) {
+                Object value = column.extractor().apply(entity);
+                if (value == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                switch (column.type()) {
+                    case TEXT -> {
+                        byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                    case INT4 -> {
+                        out.writeInt(4);
+                        out.writeInt(((Number) value).intValue());
+                    }
+                    case INT8 -> {
+                        out.writeInt(8);
+                        out.writeLong(((Number) value).longValue());
+                    }
+                    case TIMESTAMP -> {
+                        out.writeInt(8);
+                        out.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, (LocalDateTime) value));
+                    }
+                }
+            }
+        }
+        out.writeShort(-1);
+    }
+
+    private static void appendEscaped(StringBuilder line, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> line.append("\\\\");
+                case '\t' -> line.append("\\t");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                default -> line.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package by.javaguru.dao;
+
+import by.javaguru.exception.DaoException;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.PropertiesUtil;
+import lombok.experimental.UtilityClass;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily reads a query through a server-side cursor. pgJDBC only uses a cursor
+ * when autocommit is off and a fetch size is set, otherwise it buffers the whole
+ * result set. The connection stays borrowed until the stream is closed or fully
+ * consumed, so callers should use try-with-resources.
+ */
+@UtilityClass
+class CursorStream {
+    private static final String FETCH_SIZE_KEY = "db.fetchSize";
+    static final int FETCH_SIZE = PropertiesUtil.getInt(FETCH_SIZE_KEY, 1000);
+
+    @FunctionalInterface
+    interface ParameterBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    static <E> Stream<E> of(String sql, RowMapper<E> mapper) {
+        return of(sql, statement -> {
+        }, mapper);
+    }
+
+    static <E> Stream<E> of(String sql, ParameterBinder binder, RowMapper<E> mapper) {
+        Connection connection = ConnectionManager.open();
+        PreparedStatement statement = null;
+        try {
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            binder.bind(statement);
+
+            Cursor<E> cursor = new Cursor<>(connection, statement, statement.executeQuery(), mapper);
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException e) {
+            closeQuietly(statement, connection);
+            throw new DaoException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(statement, connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the statement before the connection, so that a cached statement
+     * is handed back to the statement cache of the connection.
+     */
+    private static void closeQuietly(PreparedStatement statement, Connection connection) {
+        try (connection) {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException ignored) {
+            // the original failure is more interesting
+        }
+    }
+
+    private static final class Cursor<E> extends Spliterators.AbstractSpliterator<E> {
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet result;
+        private final RowMapper<E> mapper;
+        private boolean closed;
+
+        private Cursor(Connection connection, PreparedStatement statement, ResultSet result, RowMapper<E> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.connection = connection;
+            this.statement = statement;
+            this.result = result;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!result.next()) {
+                    close();
+                    return false;
+                }
+                action.accept(mapper.map(result));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new DaoException(e);
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try (connection; statement; result) {
+                connection.commit();
+            } catch (SQLException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package by.javaguru.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface Dao <K, E> {
     E save(E entity);
+    List<E> saveAll(Collection<E> entities);
     boolean update(K key, E entity);
     boolean delete(K id);
     Optional<E> findById(K id);
+    Map<K, E> findAllById(Collection<K> ids);
     List<E> findAll();
 }
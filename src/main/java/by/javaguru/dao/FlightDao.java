@@ -1,11 +1,14 @@
 package by.javaguru.dao;
 
 import by.javaguru.dto.FlightUpdateInfo;
+import by.javaguru.dto.Page;
 import by.javaguru.dto.TicketFilter;
 import by.javaguru.dto.TicketUpdateInfo;
 import by.javaguru.entity.Flight;
 import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,25 +18,35 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import static java.lang.String.*;
-
-public class FlightDao implements Dao<Long, Flight> {
+public class FlightDao implements UpsertDao<Long, Flight> {
     private static final FlightDao INSTANCE = new FlightDao();
     private static final TicketDao ticketDao = TicketDao.getInstance();
-    private static final Connection connection = ConnectionManager.open();
+    private static final SeatAvailability seatAvailability = SeatAvailability.getInstance();
     private static final Logger logger = LoggerFactory.getLogger(FlightDao.class);
     private static final String INSERT_SQL = """
             INSERT INTO flight (flight_no, departure_date, departure_airport_code,
              arrival_date, arrival_airport_code, aircraft_id, status)
             VALUES (?, ?, ?, ?, ?, ?, ?)
             """;
+    private static final String UPSERT_SQL = INSERT_SQL + """
+            ON CONFLICT (flight_no, departure_date) DO UPDATE
+            SET
+                departure_airport_code = EXCLUDED.departure_airport_code,
+                arrival_date = EXCLUDED.arrival_date,
+                arrival_airport_code = EXCLUDED.arrival_airport_code,
+                aircraft_id = EXCLUDED.aircraft_id,
+                status = EXCLUDED.status
+            """;
 
     private static final String DELETE_SQL = """
             DELETE FROM flight
@@ -58,16 +71,48 @@ public class FlightDao implements Dao<Long, Flight> {
              arrival_airport_code, aircraft_id, status
             FROM flight
             """;
+    // positions of the FIND_ALL_SQL columns, every flight query selects them in this order
+    private static final int ID_COLUMN = 1;
+    private static final int FLIGHT_NO_COLUMN = 2;
+    private static final int DEPARTURE_DATE_COLUMN = 3;
+    private static final int DEPARTURE_AIRPORT_CODE_COLUMN = 4;
+    private static final int ARRIVAL_DATE_COLUMN = 5;
+    private static final int ARRIVAL_AIRPORT_CODE_COLUMN = 6;
+    private static final int AIRCRAFT_ID_COLUMN = 7;
+    private static final int STATUS_COLUMN = 8;
     private static final String FIND_BY_ID_SQL =
             FIND_ALL_SQL + "WHERE ID = ?";
+    private static final String FIND_ALL_BY_ID_SQL =
+            FIND_ALL_SQL + "WHERE id = ANY(?)";
 
-    private static final String FILTERED_UPDATE_SQL = """
-            UPDATE flight
-            SET %s
-            WHERE id = ?
-             """;
+    private static final String FIND_PAGE_SQL = FIND_ALL_SQL + """
+            WHERE id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+    // served by flight_route_departure_idx; a null status matches every flight
+    private static final String SEARCH_SQL = FIND_ALL_SQL + """
+            WHERE departure_airport_code = ?
+              AND arrival_airport_code = ?
+              AND departure_date >= ?
+              AND departure_date < ?
+              AND (?::varchar IS NULL OR status = ?)
+            ORDER BY departure_date, id
+            LIMIT ?
+            """;
+
+    private static final String FIND_ID_BOUNDS_SQL = """
+            SELECT pg_export_snapshot(), min(id), max(id)
+            FROM flight
+            """;
+    private static final String FIND_ID_RANGE_SQL = FIND_ALL_SQL + """
+            WHERE id >= ? AND id < ?
+            ORDER BY id
+            """;
+    private static final String ID_LISTING = "flight-id";
 
     private FlightDao() {
+        QueryMetrics.getInstance().registerSqlConstants(FlightDao.class);
     }
 
     public static FlightDao getInstance() {
@@ -76,9 +121,12 @@ public class FlightDao implements Dao<Long, Flight> {
 
     @Override
     public Flight save(Flight flight) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
-            logger.info("Saving flight to database");
-            logger.debug("{}", flight);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            logger.debug("Saving flight to database");
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", flight);
+            }
 
             setStatementParameters(statement, flight);
 
@@ -86,8 +134,8 @@ public class FlightDao implements Dao<Long, Flight> {
             ResultSet generatedKeys = statement.getGeneratedKeys();
 
             if (generatedKeys.next()) {
-                logger.info("Saving flight now have ID {}", generatedKeys.getLong(1));
                 flight.setId(generatedKeys.getLong(1));
+                logger.debug("Saving flight now have ID {}", flight.getId());
             }
             return flight;
         } catch (SQLException e) {
@@ -95,18 +143,75 @@ public class FlightDao implements Dao<Long, Flight> {
         }
     }
 
+    @Override
+    public List<Flight> saveAll(Collection<Flight> flights) {
+        try {
+            logger.info("Saving {} flights to database", flights.size());
+            return BatchInsert.execute(INSERT_SQL, flights, this::setStatementParameters,
+                    (generatedKeys, flight) -> flight.setId(generatedKeys.getLong("id")));
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Inserts the flight, or overwrites the flight with the same number and
+     * departure date. Either way the flight gets its id.
+     */
+    @Override
+    public Flight upsert(Flight flight) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Upserting flight {} departing {}", flight.getFlightNo(), flight.getDepartureDate());
+            }
+
+            setStatementParameters(statement, flight);
+            statement.executeUpdate();
+            ResultSet generatedKeys = statement.getGeneratedKeys();
+            if (generatedKeys.next()) {
+                flight.setId(generatedKeys.getLong(1));
+                seatAvailability.flightChanged(flight.getId());
+            }
+            return flight;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public List<Flight> upsertAll(Collection<Flight> flights) {
+        try {
+            logger.debug("Upserting {} flights", flights.size());
+            List<Flight> upserted = BatchInsert.execute(UPSERT_SQL,
+                    BatchInsert.lastPerKey(flights, flight -> List.of(flight.getFlightNo(), flight.getDepartureDate())),
+                    this::setStatementParameters,
+                    (generatedKeys, flight) -> flight.setId(generatedKeys.getLong("id")));
+            upserted.forEach(flight -> seatAvailability.flightChanged(flight.getId()));
+            return upserted;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public boolean update(Long id, Flight flight) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
-            logger.info("Updating flight with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+            logger.debug("Updating flight with ID {}", id);
 
             setStatementParameters(statement, flight);
 
             statement.setLong(8, id);
 
-            logger.debug("{}", flight);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", flight);
+            }
 
-            return statement.executeUpdate() > 0;
+            boolean updated = statement.executeUpdate() > 0;
+            // the aircraft and with it the seat layout may have changed
+            seatAvailability.flightChanged(id);
+            return updated;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -114,10 +219,13 @@ public class FlightDao implements Dao<Long, Flight> {
 
     @Override
     public boolean delete(Long id) {
-        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
-            logger.info("Deleting flight with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            logger.debug("Deleting flight with ID {}", id);
             statement.setLong(1, id);
-            return statement.executeUpdate() > 0;
+            boolean deleted = statement.executeUpdate() > 0;
+            seatAvailability.flightChanged(id);
+            return deleted;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -125,8 +233,9 @@ public class FlightDao implements Dao<Long, Flight> {
 
     @Override
     public Optional<Flight> findById(Long id) {
-        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
-            logger.info("Starting to find flight with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
+            logger.debug("Starting to find flight with ID {}", id);
 
             statement.setLong(1, id);
             ResultSet result = statement.executeQuery();
@@ -136,25 +245,60 @@ public class FlightDao implements Dao<Long, Flight> {
                 flight = readFlight(result);
             }
 
-            logger.debug("{}", flight);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", flight);
+            }
             return Optional.ofNullable(flight);
         } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
 
+    @Override
+    public Map<Long, Flight> findAllById(Collection<Long> ids) {
+        Map<Long, Flight> flights = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return flights;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find {} flights by ID", ids.size());
+            }
+
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Flight flight = readFlight(result);
+                flights.put(flight.getId(), flight);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} flights", flights.size());
+            }
+
+            return flights;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public List<Flight> findAll() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Starting to find all flights");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL)) {
+            logger.debug("Starting to find all flights");
 
             List<Flight> tickets = new ArrayList<>();
-            ResultSet result = statement.executeQuery(FIND_ALL_SQL);
+            ResultSet result = statement.executeQuery();
 
             while (result.next()) {
                 tickets.add(readFlight(result));
             }
-            logger.debug("Found {} flights", tickets.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} flights", tickets.size());
+            }
 
             return tickets;
         } catch (SQLException e) {
@@ -162,49 +306,125 @@ public class FlightDao implements Dao<Long, Flight> {
         }
     }
 
-    public boolean updateDataByFlightId(Long id, FlightUpdateInfo flightInfo, TicketUpdateInfo ticketInfo) {
-        Map<String, Object> parameters = getFlightInfoParam(flightInfo);
+    /**
+     * Streams all flights through a server-side cursor without loading the table into memory.
+     * The stream holds a pooled connection and must be closed.
+     */
+    public Stream<Flight> streamAll() {
+        logger.debug("Starting to stream all flights");
+        return CursorStream.of(FIND_ALL_SQL, FlightDao::readFlight);
+    }
 
-        String setSql = parameters.entrySet().stream()
-                .map(e -> format("%s = %s", e.getKey(), e.getValue()))
-                .collect(Collectors.joining(", "));
+    /**
+     * Reads all flights ordered by id, splitting the table into id ranges that
+     * are read concurrently on up to {@code parallelism} pooled connections.
+     * All ranges see the same snapshot of the table.
+     */
+    public List<Flight> findAllParallel(int parallelism) {
+        logger.debug("Starting to find all flights in parallel");
+        return ParallelScan.list(FIND_ID_BOUNDS_SQL, FIND_ID_RANGE_SQL, FlightDao::readFlight, parallelism);
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(FILTERED_UPDATE_SQL.formatted(setSql))) {
-            connection.setAutoCommit(false);
+    /**
+     * Like {@link #findAllParallel(int)}, but hands every flight to the action
+     * as soon as it is read, in no particular order and from several threads at
+     * once, so the table is never held in memory.
+     */
+    public void forEachParallel(int parallelism, Consumer<? super Flight> action) {
+        logger.debug("Starting to scan all flights in parallel");
+        ParallelScan.forEach(FIND_ID_BOUNDS_SQL, FIND_ID_RANGE_SQL, FlightDao::readFlight, parallelism, action);
+    }
 
-            statement.setLong(1, id);
-            int countRecords = statement.executeUpdate();
+    /**
+     * Keyset page of flights ordered by id. Pass {@code null} for the first page
+     * and {@link Page#getNextToken()} for the following ones.
+     */
+    public Page<Flight> findPage(String pageToken, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        String[] key = PageToken.decode(ID_LISTING, 1, pageToken);
+        long afterId = key == null ? Long.MIN_VALUE : Long.parseLong(key[0]);
 
-            TicketFilter ticketFilter = TicketFilter.builder().flightId(id).build();
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_PAGE_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Finding {} flights after ID {}", limit, afterId);
+            }
 
-            ticketDao.updateTickets(ticketFilter, ticketInfo);
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit + 1);
+            ResultSet result = statement.executeQuery();
 
-            connection.commit();
-            return countRecords > 0;
-        } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                throw new DaoException(ex);
+            List<Flight> flights = new ArrayList<>(limit + 1);
+            while (result.next()) {
+                flights.add(readFlight(result));
             }
+
+            return PageToken.toPage(flights, limit, flight -> PageToken.encode(ID_LISTING, flight.getId()));
+        } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
 
-    private Map<String, Object> getFlightInfoParam(FlightUpdateInfo flightInfo) {
-        Map<String, Object> parameters = new HashMap<>();
-
-        if (flightInfo.getFlightNo() != null) {
-            parameters.put("flight_no", "'" + flightInfo.getFlightNo() + "'");
-        }
-        if (flightInfo.getAircraftId() != null) {
-            parameters.put("aircraft_id", flightInfo.getAircraftId());
+    /**
+     * Flights of the route departing within {@code [from, to)}, earliest first.
+     * Pass {@code null} status to find flights in any status.
+     */
+    public List<Flight> search(String departureAirportCode, String arrivalAirportCode,
+                               LocalDateTime from, LocalDateTime to, String status, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Search limit must be positive: " + limit);
         }
-        if (flightInfo.getStatus() != null) {
-            parameters.put("status", "'" + flightInfo.getStatus() + "'");
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(SEARCH_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Searching flights {} -> {} departing from {} to {}",
+                        departureAirportCode, arrivalAirportCode, from, to);
+            }
+
+            statement.setString(1, departureAirportCode);
+            statement.setString(2, arrivalAirportCode);
+            statement.setTimestamp(3, Timestamp.valueOf(from));
+            statement.setTimestamp(4, Timestamp.valueOf(to));
+            statement.setString(5, status);
+            statement.setString(6, status);
+            statement.setInt(7, limit);
+            ResultSet result = statement.executeQuery();
+
+            List<Flight> flights = new ArrayList<>();
+            while (result.next()) {
+                flights.add(readFlight(result));
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} flights", flights.size());
+            }
+
+            return flights;
+        } catch (SQLException e) {
+            throw new DaoException(e);
         }
+    }
 
-        return parameters;
+    public boolean updateDataByFlightId(Long id, FlightUpdateInfo flightInfo, TicketUpdateInfo ticketInfo) {
+        UpdateBuilder update = UpdateBuilder.update("flight")
+                .set("flight_no", flightInfo.getFlightNo())
+                .set("aircraft_id", flightInfo.getAircraftId())
+                .set("status", flightInfo.getStatus())
+                .where("id", id);
+
+        return TransactionTemplate.READ_WRITE.execute(connection -> {
+            int countRecords;
+            try (PreparedStatement statement = update.prepare(connection)) {
+                countRecords = statement.executeUpdate();
+            }
+
+            TicketFilter ticketFilter = TicketFilter.builder().flightId(id).build();
+            ticketDao.updateTickets(ticketFilter, ticketInfo);
+            seatAvailability.flightChanged(id);
+            return countRecords > 0;
+        });
     }
 
     private void setStatementParameters(PreparedStatement statement, Flight flight) throws SQLException {
@@ -219,14 +439,14 @@ public class FlightDao implements Dao<Long, Flight> {
 
     private static Flight readFlight(ResultSet result) throws SQLException {
         return Flight.builder()
-                .id(result.getLong("id"))
-                .flightNo(result.getString("flight_no"))
-                .departureDate(result.getTimestamp("departure_date").toLocalDateTime())
-                .departureAirportCode(result.getString("departure_airport_code"))
-                .arrivalDate(result.getTimestamp("arrival_date").toLocalDateTime())
-                .arrivalAirportCode(result.getString("arrival_airport_code"))
-                .aircraftId(result.getLong("aircraft_id"))
-                .status(result.getString("status"))
+                .id(result.getLong(ID_COLUMN))
+                .flightNo(result.getString(FLIGHT_NO_COLUMN))
+                .departureDate(result.getObject(DEPARTURE_DATE_COLUMN, LocalDateTime.class))
+                .departureAirportCode(result.getString(DEPARTURE_AIRPORT_CODE_COLUMN))
+                .arrivalDate(result.getObject(ARRIVAL_DATE_COLUMN, LocalDateTime.class))
+                .arrivalAirportCode(result.getString(ARRIVAL_AIRPORT_CODE_COLUMN))
+                .aircraftId(result.getLong(AIRCRAFT_ID_COLUMN))
+                .status(result.getString(STATUS_COLUMN))
                 .build();
     }
 }
@@ -0,0 +1,175 @@
+package by.javaguru.dao;
+
+import by.javaguru.dto.Itinerary;
+import by.javaguru.entity.Aircraft;
+import by.javaguru.entity.Airport;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Ticket;
+import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class ItineraryDao {
+    private static final ItineraryDao INSTANCE = new ItineraryDao();
+    private static final Logger logger = LoggerFactory.getLogger(ItineraryDao.class);
+    private static final String FIND_BY_FLIGHT_IDS_SQL = """
+            SELECT f.id, f.flight_no, f.departure_date, f.departure_airport_code, f.arrival_date,
+                   f.arrival_airport_code, f.aircraft_id, f.status,
+                   da.country AS departure_country, da.city AS departure_city,
+                   aa.country AS arrival_country, aa.city AS arrival_city,
+                   ac.model,
+                   t.id AS ticket_id, t.passport_no, t.passenger_name, t.seat_no, t.cost
+            FROM flight f
+                JOIN airport da ON da.code = f.departure_airport_code
+                JOIN airport aa ON aa.code = f.arrival_airport_code
+                JOIN aircraft ac ON ac.id = f.aircraft_id
+                LEFT JOIN ticket t ON t.flight_id = f.id
+            WHERE f.id = ANY(?)
+            ORDER BY f.id, t.seat_no
+            """;
+    // positions of the FIND_BY_FLIGHT_IDS_SQL columns
+    private static final int ID_COLUMN = 1;
+    private static final int FLIGHT_NO_COLUMN = 2;
+    private static final int DEPARTURE_DATE_COLUMN = 3;
+    private static final int DEPARTURE_AIRPORT_CODE_COLUMN = 4;
+    private static final int ARRIVAL_DATE_COLUMN = 5;
+    private static final int ARRIVAL_AIRPORT_CODE_COLUMN = 6;
+    private static final int AIRCRAFT_ID_COLUMN = 7;
+    private static final int STATUS_COLUMN = 8;
+    private static final int DEPARTURE_COUNTRY_COLUMN = 9;
+    private static final int DEPARTURE_CITY_COLUMN = 10;
+    private static final int ARRIVAL_COUNTRY_COLUMN = 11;
+    private static final int ARRIVAL_CITY_COLUMN = 12;
+    private static final int MODEL_COLUMN = 13;
+    private static final int TICKET_ID_COLUMN = 14;
+    private static final int PASSPORT_NO_COLUMN = 15;
+    private static final int PASSENGER_NAME_COLUMN = 16;
+    private static final int SEAT_NO_COLUMN = 17;
+    private static final int COST_COLUMN = 18;
+
+    private ItineraryDao() {
+        QueryMetrics.getInstance().registerSqlConstants(ItineraryDao.class);
+    }
+
+    public static ItineraryDao getInstance() {
+        return INSTANCE;
+    }
+
+    public Optional<Itinerary> findByFlightId(Long flightId) {
+        return Optional.ofNullable(findByFlightIds(List.of(flightId)).get(flightId));
+    }
+
+    /**
+     * Loads itineraries for all given flights in one joined query.
+     */
+    public Map<Long, Itinerary> findByFlightIds(Collection<Long> flightIds) {
+        Map<Long, Itinerary> itineraries = new LinkedHashMap<>();
+        if (flightIds.isEmpty()) {
+            return itineraries;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_FLIGHT_IDS_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find itineraries for {} flights", flightIds.size());
+            }
+
+            statement.setArray(1, connection.createArrayOf("bigint", flightIds.toArray()));
+            ResultSet result = statement.executeQuery();
+
+            Map<String, Airport> airports = new HashMap<>();
+            Map<Long, Aircraft> aircrafts = new HashMap<>();
+            while (result.next()) {
+                long flightId = result.getLong(ID_COLUMN);
+                Itinerary itinerary = itineraries.get(flightId);
+                if (itinerary == null) {
+                    itinerary = readItinerary(result, airports, aircrafts);
+                    itineraries.put(flightId, itinerary);
+                }
+
+                long ticketId = result.getLong(TICKET_ID_COLUMN);
+                if (!result.wasNull()) {
+                    itinerary.getTickets().add(readTicket(result, ticketId, flightId));
+                }
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} itineraries", itineraries.size());
+            }
+            return itineraries;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private static Itinerary readItinerary(ResultSet result, Map<String, Airport> airports,
+                                           Map<Long, Aircraft> aircrafts) throws SQLException {
+        Flight flight = Flight.builder()
+                .id(result.getLong(ID_COLUMN))
+                .flightNo(result.getString(FLIGHT_NO_COLUMN))
+                .departureDate(result.getObject(DEPARTURE_DATE_COLUMN, LocalDateTime.class))
+                .departureAirportCode(result.getString(DEPARTURE_AIRPORT_CODE_COLUMN))
+                .arrivalDate(result.getObject(ARRIVAL_DATE_COLUMN, LocalDateTime.class))
+                .arrivalAirportCode(result.getString(ARRIVAL_AIRPORT_CODE_COLUMN))
+                .aircraftId(result.getLong(AIRCRAFT_ID_COLUMN))
+                .status(result.getString(STATUS_COLUMN))
+                .build();
+
+        Airport departure = airports.get(flight.getDepartureAirportCode());
+        if (departure == null) {
+            departure = Airport.builder()
+                    .code(flight.getDepartureAirportCode())
+                    .country(result.getString(DEPARTURE_COUNTRY_COLUMN))
+                    .city(result.getString(DEPARTURE_CITY_COLUMN))
+                    .build();
+            airports.put(departure.getCode(), departure);
+        }
+
+        Airport arrival = airports.get(flight.getArrivalAirportCode());
+        if (arrival == null) {
+            arrival = Airport.builder()
+                    .code(flight.getArrivalAirportCode())
+                    .country(result.getString(ARRIVAL_COUNTRY_COLUMN))
+                    .city(result.getString(ARRIVAL_CITY_COLUMN))
+                    .build();
+            airports.put(arrival.getCode(), arrival);
+        }
+
+        Aircraft aircraft = aircrafts.get(flight.getAircraftId());
+        if (aircraft == null) {
+            aircraft = Aircraft.builder()
+                    .id(flight.getAircraftId().intValue())
+                    .model(result.getString(MODEL_COLUMN))
+                    .build();
+            aircrafts.put(flight.getAircraftId(), aircraft);
+        }
+
+        return new Itinerary(flight, departure, arrival, aircraft, new ArrayList<>());
+    }
+
+    private static Ticket readTicket(ResultSet result, long ticketId, long flightId) throws SQLException {
+        return Ticket.builder()
+                .id(ticketId)
+                .passportNo(result.getString(PASSPORT_NO_COLUMN))
+                .passengerName(result.getString(PASSENGER_NAME_COLUMN))
+                .flightId(flightId)
+                .seatNo(result.getString(SEAT_NO_COLUMN))
+                .cost(result.getInt(COST_COLUMN))
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package by.javaguru.dao;
+
+import by.javaguru.dto.Page;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Encodes the last key of a keyset page into an opaque token. The token carries
+ * the listing it belongs to, so a token from one listing is rejected by another.
+ */
+@UtilityClass
+class PageToken {
+    private static final String SEPARATOR = ":";
+
+    static String encode(String listing, Object... keyParts) {
+        StringBuilder raw = new StringBuilder(listing);
+        for (Object part : keyParts) {
+            raw.append(SEPARATOR).append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the key parts stored in the token, or {@code null} for the first page.
+     */
+    static String[] decode(String listing, int keyParts, String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, keyParts + 1);
+            if (parts.length != keyParts + 1 || !parts[0].equals(listing)) {
+                throw new IllegalArgumentException("Page token does not belong to " + listing);
+            }
+            String[] key = new String[keyParts];
+            System.arraycopy(parts, 1, key, 0, keyParts);
+            return key;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+    }
+
+    /**
+     * Builds a page from up to {@code limit + 1} rows, the extra row only tells
+     * that a next page exists.
+     */
+    static <E> Page<E> toPage(List<E> rows, int limit, Function<E, String> tokenOf) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<E> items = rows.subList(0, limit);
+        return new Page<>(List.copyOf(items), tokenOf.apply(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,190 @@
+package by.javaguru.dao;
+
+import by.javaguru.exception.DaoException;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.PoolConfig;
+import by.javaguru.util.PropertiesUtil;
+import by.javaguru.util.TransactionTemplate;
+import lombok.experimental.UtilityClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Reads a whole table in parallel: the {@code id} span is cut into ranges of
+ * {@code db.scan.rangeSize} ids and a {@link ForkJoinPool} reads the ranges,
+ * each one on its own pooled connection.
+ * <p>
+ * The coordinator connection exports its snapshot and every range imports it
+ * with {@code SET TRANSACTION SNAPSHOT}, so all ranges see the table as of the
+ * same moment, the way {@code pg_dump --jobs} does. The coordinator holds a
+ * connection for the whole scan, so at most pool size - 1 ranges are read at
+ * once.
+ */
+@UtilityClass
+class ParallelScan {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelScan.class);
+    private static final String RANGE_SIZE_KEY = "db.scan.rangeSize";
+    private static final long RANGE_SIZE = PropertiesUtil.getLong(RANGE_SIZE_KEY, 10_000);
+    // more ranges than threads, so that work stealing evens out skewed ranges
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int MAX_PARALLELISM = Math.max(PoolConfig.fromProperties().getMaxSize() - 1, 1);
+
+    /**
+     * Returns all rows ordered by id. {@code boundsSql} selects
+     * {@code pg_export_snapshot(), min(id), max(id)} of the table and
+     * {@code rangeSql} the rows with {@code id >= ? AND id < ?} ordered by id.
+     */
+    static <E> List<E> list(String boundsSql, String rangeSql, RowMapper<E> mapper, int parallelism) {
+        Map<Long, List<E>> ranges = new ConcurrentSkipListMap<>();
+        scan(boundsSql, rangeSql, mapper, parallelism, () -> {
+        }, from -> {
+            List<E> rows = new ArrayList<>();
+            ranges.put(from, rows);
+            return rows::add;
+        });
+
+        List<E> all = new ArrayList<>();
+        ranges.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * Passes every row to the action in no particular order. The action is
+     * called from several threads at once and must be thread-safe.
+     */
+    static <E> void forEach(String boundsSql, String rangeSql, RowMapper<E> mapper, int parallelism,
+                            Consumer<? super E> action) {
+        forEach(boundsSql, rangeSql, mapper, parallelism, () -> {
+        }, action);
+    }
+
+    /**
+     * Like {@link #forEach(String, String, RowMapper, int, Consumer)}, running
+     * {@code onSnapshot} once the snapshot of the scan has been taken, before
+     * the first row is read.
+     */
+    static <E> void forEach(String boundsSql, String rangeSql, RowMapper<E> mapper, int parallelism,
+                            Runnable onSnapshot, Consumer<? super E> action) {
+        scan(boundsSql, rangeSql, mapper, parallelism, onSnapshot, from -> action);
+    }
+
+    private static <E> void scan(String boundsSql, String rangeSql, RowMapper<E> mapper, int parallelism,
+                                 Runnable onSnapshot, LongFunction<Consumer<? super E>> sinkOf) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        if (TransactionTemplate.isActive()) {
+            throw new IllegalStateException("A parallel scan reads on its own connections and cannot join a transaction");
+        }
+
+        try (Connection connection = ConnectionManager.open()) {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+            String snapshot;
+            long minId;
+            long maxId;
+            try (PreparedStatement statement = connection.prepareStatement(boundsSql)) {
+                ResultSet result = statement.executeQuery();
+                result.next();
+                snapshot = result.getString(1);
+                onSnapshot.run();
+                minId = result.getLong(2);
+                if (result.wasNull()) {
+                    connection.commit();
+                    return;
+                }
+                maxId = result.getLong(3);
+            }
+
+            int threads = Math.min(parallelism, MAX_PARALLELISM);
+            long span = maxId - minId + 1;
+            long rangeCount = Math.max(Math.min((long) threads * RANGES_PER_THREAD, span),
+                    (span + RANGE_SIZE - 1) / RANGE_SIZE);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Scanning ids {}..{} in {} ranges on {} threads", minId, maxId, rangeCount, threads);
+            }
+
+            Range<E> all = new Range<>(new Scan<>(snapshot, rangeSql, mapper, sinkOf, minId, span, rangeCount),
+                    0, rangeCount);
+            try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+                pool.invoke(all);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private record Scan<E>(String snapshot, String rangeSql, RowMapper<E> mapper,
+                           LongFunction<Consumer<? super E>> sinkOf, long minId, long span, long rangeCount) {
+        private long boundary(long range) {
+            return minId + span / rangeCount * range + Math.min(range, span % rangeCount);
+        }
+
+        private void read(long range) {
+            long from = boundary(range);
+            long to = boundary(range + 1);
+            Consumer<? super E> sink = sinkOf.apply(from);
+            try (Connection connection = ConnectionManager.open()) {
+                connection.setAutoCommit(false);
+                connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                try (Statement statement = connection.createStatement()) {
+                    // must be the first statement of the transaction, ids come from the server
+                    statement.execute("SET TRANSACTION SNAPSHOT '%s'".formatted(snapshot));
+                }
+                try (PreparedStatement statement = connection.prepareStatement(rangeSql)) {
+                    statement.setFetchSize(CursorStream.FETCH_SIZE);
+                    statement.setLong(1, from);
+                    statement.setLong(2, to);
+                    ResultSet result = statement.executeQuery();
+                    while (result.next()) {
+                        sink.accept(mapper.map(result));
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+
+    /**
+     * Ranges {@code [first, last)} of a scan, halved until one is left.
+     */
+    private static final class Range<E> extends RecursiveAction {
+        private final Scan<E> scan;
+        private final long first;
+        private final long last;
+
+        private Range(Scan<E> scan, long first, long last) {
+            this.scan = scan;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                scan.read(first);
+                return;
+            }
+            long middle = (first + last) >>> 1;
+            invokeAll(new Range<>(scan, first, middle), new Range<>(scan, middle, last));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package by.javaguru.dao;
+
+import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.PropertiesUtil;
+import by.javaguru.util.TransactionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of {@code flight} and {@code ticket} of the
+ * partitioned schema ({@code create-database-partitioned.sql}, enabled with
+ * {@code db.schema.partitioned=true}). Partitions are named
+ * {@code flight_pYYYY_MM} and {@code ticket_pYYYY_MM} and cover the departure
+ * dates of that month; a ticket lives in the partition of its flight.
+ * <p>
+ * {@link #run(LocalDate)} creates the partitions of the next
+ * {@code db.partition.monthsAhead} months and detaches the ones older than
+ * {@code db.partition.retentionMonths}. Detached partitions stay in the schema
+ * as plain tables to be archived or dropped.
+ */
+public class PartitionMaintenance {
+    private static final PartitionMaintenance INSTANCE = new PartitionMaintenance(
+            PropertiesUtil.getInt("db.partition.monthsAhead", 3),
+            PropertiesUtil.getInt("db.partition.retentionMonths", 24));
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMaintenance.class);
+    private static final boolean ENABLED = PropertiesUtil.getBoolean("db.schema.partitioned", false);
+    private static final String FLIGHT = "flight";
+    private static final String TICKET = "ticket";
+    private static final Pattern PARTITION_NAME = Pattern.compile("(flight|ticket)_p(\\d{4})_(\\d{2})");
+    private static final String FIND_PARTITIONS_SQL = """
+            SELECT c.relname
+            FROM pg_inherits i
+                     JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = ?::regclass
+            """;
+    private static final String FIND_FOREIGN_KEYS_SQL = """
+            SELECT conname
+            FROM pg_constraint
+            WHERE conrelid = ?::regclass
+              AND contype = 'f'
+            """;
+    private static final String CREATE_PARTITION_SQL =
+            "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')";
+    private static final String DETACH_PARTITION_SQL = "ALTER TABLE %s DETACH PARTITION %s";
+    private static final String DROP_CONSTRAINT_SQL = "ALTER TABLE %s DROP CONSTRAINT %s";
+
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    private PartitionMaintenance(int monthsAhead, int retentionMonths) {
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        QueryMetrics.getInstance().registerSqlConstants(PartitionMaintenance.class);
+    }
+
+    public static PartitionMaintenance getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether the DAOs run against the partitioned schema, where every ticket
+     * also carries the departure date of its flight.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public void run(LocalDate today) {
+        YearMonth month = YearMonth.from(today);
+        createPartitions(month, month.plusMonths(monthsAhead));
+        detachPartitionsBefore(month.minusMonths(retentionMonths));
+    }
+
+    /**
+     * Runs the maintenance for the current date every {@code period}. A failed
+     * run is logged and retried with the next one.
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService scheduler, Duration period) {
+        return scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                run(LocalDate.now());
+            } catch (RuntimeException e) {
+                logger.error("Partition maintenance failed", e);
+            }
+        }, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the missing flight and ticket partitions of every month from
+     * {@code from} to {@code to} inclusive and returns their names.
+     */
+    public List<String> createPartitions(YearMonth from, YearMonth to) {
+        List<String> created = new ArrayList<>();
+        Set<YearMonth> flightMonths = findPartitionMonths(FLIGHT);
+        Set<YearMonth> ticketMonths = findPartitionMonths(TICKET);
+
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            YearMonth partitionMonth = month;
+            List<String> tables = new ArrayList<>(2);
+            // tickets reference flights, so the flight partition comes first
+            if (!flightMonths.contains(month)) {
+                tables.add(FLIGHT);
+            }
+            if (!ticketMonths.contains(month)) {
+                tables.add(TICKET);
+            }
+            if (tables.isEmpty()) {
+                continue;
+            }
+
+            TransactionTemplate.READ_WRITE.execute(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (String table : tables) {
+                        statement.execute(CREATE_PARTITION_SQL.formatted(partitionName(table, partitionMonth), table,
+                                partitionMonth.atDay(1), partitionMonth.plusMonths(1).atDay(1)));
+                    }
+                }
+                return null;
+            });
+            tables.forEach(table -> created.add(partitionName(table, partitionMonth)));
+        }
+
+        if (!created.isEmpty()) {
+            logger.info("Created partitions {}", created);
+        }
+        return created;
+    }
+
+    /**
+     * Detaches the flight and ticket partitions of the months before
+     * {@code month} and returns their names. The detached ticket tables lose
+     * their foreign key to {@code flight}, whose referenced rows are detached
+     * along with them. Detaching bypasses the ticket triggers, so the
+     * passenger counts are rebuilt afterwards, and the seat availability of the
+     * flights that left is dropped.
+     */
+    public List<String> detachPartitionsBefore(YearMonth month) {
+        List<String> detached = new ArrayList<>();
+        Set<YearMonth> ticketMonths = findPartitionMonths(TICKET);
+        Set<YearMonth> flightMonths = findPartitionMonths(FLIGHT);
+        Set<YearMonth> months = new TreeSet<>(ticketMonths);
+        months.addAll(flightMonths);
+
+        for (YearMonth partitionMonth : months) {
+            if (!partitionMonth.isBefore(month)) {
+                break;
+            }
+            TransactionTemplate.READ_WRITE.execute(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    if (ticketMonths.contains(partitionMonth)) {
+                        String partition = partitionName(TICKET, partitionMonth);
+                        statement.execute(DETACH_PARTITION_SQL.formatted(TICKET, partition));
+                        for (String foreignKey : findForeignKeys(connection, partition)) {
+                            statement.execute(DROP_CONSTRAINT_SQL.formatted(partition, foreignKey));
+                        }
+                    }
+                    if (flightMonths.contains(partitionMonth)) {
+                        statement.execute(DETACH_PARTITION_SQL.formatted(FLIGHT, partitionName(FLIGHT, partitionMonth)));
+                    }
+                }
+                return null;
+            });
+            if (ticketMonths.contains(partitionMonth)) {
+                detached.add(partitionName(TICKET, partitionMonth));
+            }
+            if (flightMonths.contains(partitionMonth)) {
+                detached.add(partitionName(FLIGHT, partitionMonth));
+            }
+        }
+
+        if (!detached.isEmpty()) {
+            logger.info("Detached partitions {}", detached);
+            SeatAvailability.getInstance().invalidateAll();
+            TicketDao.getInstance().rebuildPassengerCounts();
+        }
+        return detached;
+    }
+
+    /**
+     * Months of the attached partitions of {@code table} named by this class.
+     */
+    public Set<YearMonth> findPartitionMonths(String table) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_PARTITIONS_SQL)) {
+            statement.setString(1, table);
+            ResultSet result = statement.executeQuery();
+
+            Set<YearMonth> months = new TreeSet<>();
+            while (result.next()) {
+                Matcher matcher = PARTITION_NAME.matcher(result.getString(1));
+                if (matcher.matches() && matcher.group(1).equals(table)) {
+                    months.add(YearMonth.of(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3))));
+                }
+            }
+            return months;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private static List<String> findForeignKeys(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(FIND_FOREIGN_KEYS_SQL)) {
+            statement.setString(1, table);
+            ResultSet result = statement.executeQuery();
+
+            List<String> foreignKeys = new ArrayList<>();
+            while (result.next()) {
+                foreignKeys.add(result.getString(1));
+            }
+            return foreignKeys;
+        }
+    }
+
+    private static String partitionName(String table, YearMonth month) {
+        return "%s_p%d_%02d".formatted(table, month.getYear(), month.getMonthValue());
+    }
+}
@@ -0,0 +1,9 @@
+package by.javaguru.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+@FunctionalInterface
+interface RowMapper<E> {
+    E map(ResultSet result) throws SQLException;
+}
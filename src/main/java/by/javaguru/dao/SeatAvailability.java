@@ -0,0 +1,268 @@
+package by.javaguru.dao;
+
+import by.javaguru.entity.Ticket;
+import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.TransactionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Occupied seats of every flight as a bitmap over the seat layout of its
+ * aircraft. Seats are ordered front to back, by row and then by letter, so
+ * "first free seats" are the lowest clear bits.
+ * <p>
+ * A flight is loaded on its first lookup with one query and then kept up to
+ * date by {@link TicketDao} and {@link FlightDao} writes. Writes made inside a
+ * {@link TransactionTemplate} evict the flight once the transaction ends.
+ * Seat layout changes and {@link CopyLoader} runs drop everything. Writes that
+ * bypass the DAOs must call {@link #invalidateAll()}.
+ */
+public class SeatAvailability {
+    private static final SeatAvailability INSTANCE = new SeatAvailability();
+    private static final Logger logger = LoggerFactory.getLogger(SeatAvailability.class);
+    private static final String FIND_FLIGHT_SEATS_SQL = """
+            SELECT f.aircraft_id, t.seat_no
+            FROM flight f
+                LEFT JOIN ticket t ON t.flight_id = f.id
+            WHERE f.id = ?
+            """;
+    private static final String FIND_LAYOUT_SQL = """
+            SELECT seat_no
+            FROM seat
+            WHERE aircraft_id = ?
+            """;
+    private static final int AIRCRAFT_ID_COLUMN = 1;
+    private static final int SEAT_NO_COLUMN = 2;
+    private static final Comparator<String> FRONT_TO_BACK = Comparator
+            .comparingInt(SeatAvailability::rowOf)
+            .thenComparing(SeatAvailability::letterOf)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final Map<Long, SeatLayout> layouts = new ConcurrentHashMap<>();
+    private final Map<Long, FlightSeats> flights = new ConcurrentHashMap<>();
+    // bumped on every change so that a load racing with a write is not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Seats of one aircraft and the bit assigned to each of them.
+     */
+    private record SeatLayout(String[] seatNos, Map<String, Integer> indexes) {
+        private static SeatLayout of(List<String> seatNos) {
+            String[] ordered = seatNos.stream().sorted(FRONT_TO_BACK).toArray(String[]::new);
+            Map<String, Integer> indexes = new HashMap<>(ordered.length * 2);
+            for (int i = 0; i < ordered.length; i++) {
+                indexes.put(ordered[i], i);
+            }
+            return new SeatLayout(ordered, indexes);
+        }
+
+        private int indexOf(String seatNo) {
+            Integer index = indexes.get(seatNo);
+            return index == null ? -1 : index;
+        }
+    }
+
+    private static final class FlightSeats {
+        private final SeatLayout layout;
+        private final BitSet occupied;
+
+        private FlightSeats(SeatLayout layout) {
+            this.layout = layout;
+            this.occupied = new BitSet(layout.seatNos().length);
+        }
+
+        private synchronized void set(String seatNo, boolean value) {
+            int index = layout.indexOf(seatNo);
+            if (index >= 0) {
+                occupied.set(index, value);
+            }
+        }
+
+        private synchronized boolean isFree(String seatNo) {
+            int index = layout.indexOf(seatNo);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown seat " + seatNo);
+            }
+            return !occupied.get(index);
+        }
+
+        private synchronized List<String> firstFree(int limit) {
+            List<String> free = new ArrayList<>(Math.min(limit, layout.seatNos().length));
+            int seatCount = layout.seatNos().length;
+            for (int index = occupied.nextClearBit(0); index < seatCount && free.size() < limit;
+                 index = occupied.nextClearBit(index + 1)) {
+                free.add(layout.seatNos()[index]);
+            }
+            return free;
+        }
+
+        private synchronized int countFree() {
+            return layout.seatNos().length - occupied.cardinality();
+        }
+    }
+
+    private SeatAvailability() {
+        QueryMetrics.getInstance().registerSqlConstants(SeatAvailability.class);
+    }
+
+    public static SeatAvailability getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isFree(Long flightId, String seatNo) {
+        return seatsOf(flightId).isFree(seatNo);
+    }
+
+    /**
+     * Returns up to {@code limit} free seats of the flight, front to back.
+     */
+    public List<String> findFreeSeats(Long flightId, int limit) {
+        return seatsOf(flightId).firstFree(limit);
+    }
+
+    public int countFreeSeats(Long flightId) {
+        return seatsOf(flightId).countFree();
+    }
+
+    public void invalidate(Long flightId) {
+        generation.incrementAndGet();
+        flights.remove(flightId);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        flights.clear();
+        layouts.clear();
+    }
+
+    void ticketSaved(Ticket ticket) {
+        seatChanged(ticket.getFlightId(), ticket.getSeatNo(), true);
+    }
+
+    void seatTaken(Long flightId, String seatNo) {
+        seatChanged(flightId, seatNo, true);
+    }
+
+    void ticketDeleted(Long flightId, String seatNo) {
+        seatChanged(flightId, seatNo, false);
+    }
+
+    void flightChanged(Long flightId) {
+        generation.incrementAndGet();
+        TransactionTemplate.afterCompletion(() -> invalidate(flightId));
+    }
+
+    void seatsChanged() {
+        generation.incrementAndGet();
+        TransactionTemplate.afterCompletion(this::invalidateAll);
+    }
+
+    private void seatChanged(Long flightId, String seatNo, boolean occupied) {
+        generation.incrementAndGet();
+        if (TransactionTemplate.isActive()) {
+            TransactionTemplate.afterCompletion(() -> invalidate(flightId));
+            return;
+        }
+        FlightSeats seats = flights.get(flightId);
+        if (seats != null) {
+            seats.set(seatNo, occupied);
+        }
+    }
+
+    private FlightSeats seatsOf(Long flightId) {
+        FlightSeats seats = flights.get(flightId);
+        if (seats != null) {
+            return seats;
+        }
+
+        long loadedAt = generation.get();
+        seats = load(flightId);
+        // a transaction may see its own uncommitted tickets, keep only what everyone sees
+        if (generation.get() == loadedAt && !TransactionTemplate.isActive()) {
+            FlightSeats concurrent = flights.putIfAbsent(flightId, seats);
+            return concurrent == null ? seats : concurrent;
+        }
+        return seats;
+    }
+
+    private FlightSeats load(Long flightId) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_FLIGHT_SEATS_SQL)) {
+            logger.debug("Loading seat availability of flight {}", flightId);
+
+            statement.setLong(1, flightId);
+            ResultSet result = statement.executeQuery();
+            if (!result.next()) {
+                throw new IllegalArgumentException("Flight %d does not exist".formatted(flightId));
+            }
+
+            FlightSeats seats = new FlightSeats(layoutOf(connection, result.getLong(AIRCRAFT_ID_COLUMN)));
+            do {
+                String seatNo = result.getString(SEAT_NO_COLUMN);
+                if (seatNo != null) {
+                    seats.set(seatNo, true);
+                }
+            } while (result.next());
+            return seats;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private SeatLayout layoutOf(Connection connection, long aircraftId) throws SQLException {
+        SeatLayout layout = layouts.get(aircraftId);
+        if (layout != null) {
+            return layout;
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(FIND_LAYOUT_SQL)) {
+            statement.setLong(1, aircraftId);
+            ResultSet result = statement.executeQuery();
+
+            List<String> seatNos = new ArrayList<>();
+            while (result.next()) {
+                seatNos.add(result.getString(1));
+            }
+            layout = SeatLayout.of(seatNos);
+        }
+        layouts.putIfAbsent(aircraftId, layout);
+        return layout;
+    }
+
+    private static int rowOf(String seatNo) {
+        int row = 0;
+        for (int i = 0; i < seatNo.length(); i++) {
+            char c = seatNo.charAt(i);
+            if (c >= '0' && c <= '9') {
+                row = row * 10 + (c - '0');
+            }
+        }
+        return row;
+    }
+
+    private static String letterOf(String seatNo) {
+        StringBuilder letters = new StringBuilder(2);
+        for (int i = 0; i < seatNo.length(); i++) {
+            char c = seatNo.charAt(i);
+            if (c < '0' || c > '9') {
+                letters.append(c);
+            }
+        }
+        return letters.toString();
+    }
+}
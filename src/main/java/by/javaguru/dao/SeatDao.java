@@ -2,6 +2,7 @@ package by.javaguru.dao;
 
 import by.javaguru.entity.Seat;
 import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,17 +13,24 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-public class SeatDao implements Dao<Seat, Seat> {
+public class SeatDao implements UpsertDao<Seat, Seat> {
     private static final SeatDao INSTANCE = new SeatDao();
-    private static final Connection connection = ConnectionManager.open();
     private static final Logger logger = LoggerFactory.getLogger(SeatDao.class);
+    private static final SeatAvailability seatAvailability = SeatAvailability.getInstance();
     private static final String INSERT_SQL = """
             INSERT INTO seat (aircraft_id, seat_no)
             VALUES (?, ?)
             """;
+    // a seat has no columns besides its key, so an existing seat is kept as is
+    private static final String UPSERT_SQL = INSERT_SQL + """
+            ON CONFLICT (aircraft_id, seat_no) DO NOTHING
+            """;
     private static final String DELETE_SQL = """
             DELETE FROM seat
             WHERE aircraft_id = ? AND seat_no = ?
@@ -37,10 +45,16 @@ public class SeatDao implements Dao<Seat, Seat> {
             SELECT aircraft_id, seat_no
             FROM seat
             """;
+    // positions of the FIND_ALL_SQL columns, every seat query selects them in this order
+    private static final int AIRCRAFT_ID_COLUMN = 1;
+    private static final int SEAT_NO_COLUMN = 2;
     private static final String FIND_BY_ID_SQL =
             FIND_ALL_SQL + "WHERE aircraft_id = ? AND seat_no = ?";
+    private static final String FIND_ALL_BY_ID_SQL =
+            FIND_ALL_SQL + "WHERE (aircraft_id, seat_no) IN (SELECT * FROM unnest(?, ?))";
 
     private SeatDao() {
+        QueryMetrics.getInstance().registerSqlConstants(SeatDao.class);
     }
 
     public static SeatDao getInstance() {
@@ -49,19 +63,23 @@ public class SeatDao implements Dao<Seat, Seat> {
 
     @Override
     public Seat save(Seat entity) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
                 Statement.RETURN_GENERATED_KEYS)) {
-            logger.info("Saving seat to database");
-            logger.debug("{}", entity);
+            logger.debug("Saving seat to database");
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", entity);
+            }
 
             statement.setInt(1, entity.getAircraftId());
             statement.setString(2, entity.getSeatNo());
 
             statement.executeUpdate();
+            seatAvailability.seatsChanged();
             ResultSet generatedKeys = statement.getGeneratedKeys();
 
             if (generatedKeys.next()) {
-                logger.info("Seat was saved");
+                logger.debug("Seat was saved");
                 return entity;
             }
 
@@ -71,16 +89,67 @@ public class SeatDao implements Dao<Seat, Seat> {
         }
     }
 
+    @Override
+    public List<Seat> saveAll(Collection<Seat> seats) {
+        try {
+            logger.info("Saving {} seats to database", seats.size());
+            List<Seat> saved = BatchInsert.execute(INSERT_SQL, seats, (statement, seat) -> {
+                statement.setInt(1, seat.getAircraftId());
+                statement.setString(2, seat.getSeatNo());
+            });
+            seatAvailability.seatsChanged();
+            return saved;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public Seat upsert(Seat seat) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+            logger.debug("Upserting seat {}", seat);
+            statement.setInt(1, seat.getAircraftId());
+            statement.setString(2, seat.getSeatNo());
+            if (statement.executeUpdate() > 0) {
+                seatAvailability.seatsChanged();
+            }
+            return seat;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public List<Seat> upsertAll(Collection<Seat> seats) {
+        try {
+            logger.debug("Upserting {} seats", seats.size());
+            List<Seat> upserted = BatchInsert.execute(UPSERT_SQL, seats, (statement, seat) -> {
+                statement.setInt(1, seat.getAircraftId());
+                statement.setString(2, seat.getSeatNo());
+            });
+            seatAvailability.seatsChanged();
+            return upserted;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public boolean update(Seat id, Seat seat) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
-            logger.info("Updating seat {} with seatNo {}", id, seat.getSeatNo());
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Updating seat {} with seatNo {}", id, seat.getSeatNo());
+            }
 
             statement.setString(1, seat.getSeatNo());
             statement.setInt(2, id.getAircraftId());
             statement.setString(3, id.getSeatNo());
 
-            return statement.executeUpdate() > 0;
+            boolean updated = statement.executeUpdate() > 0;
+            seatAvailability.seatsChanged();
+            return updated;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -88,11 +157,14 @@ public class SeatDao implements Dao<Seat, Seat> {
 
     @Override
     public boolean delete(Seat seat) {
-        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
-            logger.info("Deleting seat {}", seat);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            logger.debug("Deleting seat {}", seat);
             statement.setInt(1, seat.getAircraftId());
             statement.setString(2, seat.getSeatNo());
-            return statement.executeUpdate() > 0;
+            boolean deleted = statement.executeUpdate() > 0;
+            seatAvailability.seatsChanged();
+            return deleted;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -100,8 +172,9 @@ public class SeatDao implements Dao<Seat, Seat> {
 
     @Override
     public Optional<Seat> findById(Seat seat) {
-        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
-            logger.info("Starting to find seat {}", seat);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
+            logger.debug("Starting to find seat {}", seat);
 
             statement.setInt(1, seat.getAircraftId());
             statement.setString(2, seat.getSeatNo());
@@ -110,12 +183,11 @@ public class SeatDao implements Dao<Seat, Seat> {
             Seat foundedSeat = null;
 
             if (result.next()) {
-                foundedSeat = Seat.builder()
-                        .aircraftId(result.getInt("aircraft_id"))
-                        .seatNo(result.getString("seat_no"))
-                        .build();
+                foundedSeat = readSeat(result);
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", foundedSeat);
             }
-            logger.debug("{}", foundedSeat);
 
             return Optional.ofNullable(foundedSeat);
         } catch (SQLException e) {
@@ -123,25 +195,65 @@ public class SeatDao implements Dao<Seat, Seat> {
         }
     }
 
+    @Override
+    public Map<Seat, Seat> findAllById(Collection<Seat> ids) {
+        Map<Seat, Seat> seats = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return seats;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find {} seats", ids.size());
+            }
+
+            Object[] aircraftIds = ids.stream().map(Seat::getAircraftId).toArray();
+            Object[] seatNumbers = ids.stream().map(Seat::getSeatNo).toArray();
+            statement.setArray(1, connection.createArrayOf("integer", aircraftIds));
+            statement.setArray(2, connection.createArrayOf("varchar", seatNumbers));
+            ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Seat seat = readSeat(result);
+                seats.put(seat, seat);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} seats", seats.size());
+            }
+
+            return seats;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public List<Seat> findAll() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Starting to find all seat");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL)) {
+            logger.debug("Starting to find all seat");
 
             List<Seat> seats = new ArrayList<>();
-            ResultSet result = statement.executeQuery(FIND_ALL_SQL);
+            ResultSet result = statement.executeQuery();
 
             while (result.next()) {
-                seats.add(Seat.builder()
-                        .aircraftId(result.getInt("aircraft_id"))
-                        .seatNo(result.getString("seat_no"))
-                        .build());
+                seats.add(readSeat(result));
             }
 
-            logger.debug("Found {} seats", seats.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} seats", seats.size());
+            }
             return seats;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
     }
+
+    private static Seat readSeat(ResultSet result) throws SQLException {
+        return Seat.builder()
+                .aircraftId(result.getInt(AIRCRAFT_ID_COLUMN))
+                .seatNo(result.getString(SEAT_NO_COLUMN))
+                .build();
+    }
 }
@@ -0,0 +1,236 @@
+package by.javaguru.dao;
+
+import by.javaguru.analytics.CountMinSketch;
+import by.javaguru.analytics.HyperLogLog;
+import by.javaguru.analytics.SpaceSaving;
+import by.javaguru.entity.Ticket;
+import by.javaguru.util.TransactionTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Approximate ticket statistics for dashboards, answered from memory instead
+ * of a scan: distinct passports, most common first names and revenue per
+ * flight.
+ * <p>
+ * Tickets inserted through {@link TicketDao#save}, {@link TicketDao#saveAll}
+ * and {@link BookingDao} are recorded once their transaction commits. The
+ * sketches only grow, so updates, deletes, upserts and loads that bypass the
+ * DAOs are picked up by {@link #rebuild(int)}, which replaces the local
+ * sketches with a scan of the shared table.
+ * <p>
+ * Nodes share the tickets they write by shipping {@link #exportDelta()} to
+ * their peers, which {@link #merge(byte[])} it. A delta holds only the
+ * tickets recorded on this node since its previous export, so every ticket is
+ * added once per peer; a peer that rebuilt in between has already scanned
+ * them and counts them twice until it rebuilds again. {@link #toByteArray()}
+ * and {@link #replace(byte[])} hand over the whole state instead, e.g. to
+ * start a node without a scan.
+ */
+public class TicketAnalytics {
+    private static final TicketAnalytics INSTANCE = new TicketAnalytics();
+    private static final Logger logger = LoggerFactory.getLogger(TicketAnalytics.class);
+    private static final int PASSPORT_PRECISION = 14;
+    private static final int NAME_CAPACITY = 256;
+    private static final int REVENUE_DEPTH = 4;
+    private static final int REVENUE_WIDTH = 4096;
+
+    private Sketches sketches = new Sketches();
+    // tickets recorded here since the last export, not yet seen by the peers
+    private Sketches delta = new Sketches();
+    // collects writes that commit while a rebuild scans the table
+    private Sketches pending;
+
+    private static final class Sketches {
+        private final HyperLogLog passports;
+        private final SpaceSaving firstNames;
+        private final CountMinSketch flightRevenue;
+
+        private Sketches() {
+            this(new HyperLogLog(PASSPORT_PRECISION), new SpaceSaving(NAME_CAPACITY),
+                    new CountMinSketch(REVENUE_DEPTH, REVENUE_WIDTH));
+        }
+
+        private Sketches(HyperLogLog passports, SpaceSaving firstNames, CountMinSketch flightRevenue) {
+            this.passports = passports;
+            this.firstNames = firstNames;
+            this.flightRevenue = flightRevenue;
+        }
+
+        private void record(Ticket ticket) {
+            passports.add(ticket.getPassportNo());
+            firstNames.add(firstNameOf(ticket.getPassengerName()));
+            flightRevenue.add(ticket.getFlightId(), ticket.getCost());
+        }
+
+        private void merge(Sketches other) {
+            passports.merge(other.passports);
+            firstNames.merge(other.firstNames);
+            flightRevenue.merge(other.flightRevenue);
+        }
+
+        private byte[] toByteArray() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (byte[] sketch : List.of(passports.toByteArray(), firstNames.toByteArray(),
+                        flightRevenue.toByteArray())) {
+                    out.writeInt(sketch.length);
+                    out.write(sketch);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Sketches fromByteArray(byte[] bytes) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                return new Sketches(HyperLogLog.fromByteArray(readSection(in)),
+                        SpaceSaving.fromByteArray(readSection(in)),
+                        CountMinSketch.fromByteArray(readSection(in)));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Malformed ticket analytics", e);
+            }
+        }
+
+        private static byte[] readSection(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("Section of %d bytes exceeds the input".formatted(length));
+            }
+            return in.readNBytes(length);
+        }
+    }
+
+    private TicketAnalytics() {
+    }
+
+    public static TicketAnalytics getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized long estimateDistinctPassengers() {
+        return sketches.passports.estimate();
+    }
+
+    /**
+     * Approximate counterpart of {@link TicketDao#findMostCommonNames(int)}.
+     * Names seen more than 1/{@value #NAME_CAPACITY} of all tickets are never
+     * missed.
+     */
+    public synchronized List<String> findMostCommonNames(int limit) {
+        return sketches.firstNames.top(limit).stream()
+                .map(SpaceSaving.Entry::item)
+                .toList();
+    }
+
+    /**
+     * Upper bound of the ticket revenue of the flight.
+     */
+    public synchronized long estimateFlightRevenue(Long flightId) {
+        return sketches.flightRevenue.estimate(flightId);
+    }
+
+    public synchronized long getTotalRevenue() {
+        return sketches.flightRevenue.getTotal();
+    }
+
+    /**
+     * The whole local state, to be taken over with {@link #replace(byte[])}.
+     */
+    public synchronized byte[] toByteArray() {
+        return sketches.toByteArray();
+    }
+
+    /**
+     * Returns the tickets recorded on this node since the previous export and
+     * starts a new delta.
+     */
+    public synchronized byte[] exportDelta() {
+        byte[] exported = delta.toByteArray();
+        delta = new Sketches();
+        return exported;
+    }
+
+    /**
+     * Adds the tickets another node wrote, as returned by its
+     * {@link #exportDelta()}. The delta is not exported again.
+     */
+    public void merge(byte[] otherDelta) {
+        Sketches merged = Sketches.fromByteArray(otherDelta);
+        synchronized (this) {
+            sketches.merge(merged);
+        }
+    }
+
+    /**
+     * Takes over the whole state of another node, as written by its
+     * {@link #toByteArray()}. Tickets recorded here and not exported yet stay
+     * in the delta.
+     */
+    public void replace(byte[] other) {
+        Sketches replacement = Sketches.fromByteArray(other);
+        synchronized (this) {
+            sketches = replacement;
+        }
+    }
+
+    /**
+     * Replaces the local sketches with ones built from a parallel scan of the
+     * ticket table. Tickets committed after the scan took its snapshot are kept
+     * as well. The delta is left alone, the peers have not seen it yet.
+     */
+    public void rebuild(int parallelism) {
+        logger.info("Rebuilding ticket analytics");
+        Sketches rebuilt = new Sketches();
+        try {
+            TicketDao.getInstance().forEachParallel(parallelism, () -> {
+                synchronized (this) {
+                    pending = new Sketches();
+                }
+            }, ticket -> {
+                synchronized (rebuilt) {
+                    rebuilt.record(ticket);
+                }
+            });
+            synchronized (this) {
+                rebuilt.merge(pending);
+                sketches = rebuilt;
+            }
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        sketches = new Sketches();
+        delta = new Sketches();
+    }
+
+    void ticketSaved(Ticket ticket) {
+        TransactionTemplate.afterCommit(() -> record(ticket));
+    }
+
+    private synchronized void record(Ticket ticket) {
+        sketches.record(ticket);
+        delta.record(ticket);
+        if (pending != null) {
+            pending.record(ticket);
+        }
+    }
+
+    private static String firstNameOf(String passengerName) {
+        int space = passengerName.indexOf(' ');
+        return space < 0 ? passengerName : passengerName.substring(0, space);
+    }
+}
@@ -1,10 +1,13 @@
 package by.javaguru.dao;
 
+import by.javaguru.dto.Page;
 import by.javaguru.dto.TicketUpdateInfo;
 import by.javaguru.entity.Ticket;
 import by.javaguru.dto.TicketFilter;
 import by.javaguru.exception.DaoException;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,25 +17,50 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
-public class TicketDao implements Dao<Long, Ticket> {
+public class TicketDao implements UpsertDao<Long, Ticket> {
     private static final TicketDao INSTANCE = new TicketDao();
-    private static final Connection connection = ConnectionManager.open();
     private static final Logger logger = LoggerFactory.getLogger(TicketDao.class);
+    private static final SeatAvailability seatAvailability = SeatAvailability.getInstance();
+    private static final TicketAnalytics analytics = TicketAnalytics.getInstance();
     private static final String INSERT_SQL = """
             INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost)
             VALUES (?, ?, ?, ?, ?)
             """;
+    private static final String UPSERT_SQL = INSERT_SQL + """
+            ON CONFLICT (flight_id, seat_no) DO UPDATE
+            SET
+                passport_no = EXCLUDED.passport_no,
+                passenger_name = EXCLUDED.passenger_name,
+                cost = EXCLUDED.cost
+            """;
+    // partitioned tickets carry the departure date of their flight, their partition key
+    private static final String PARTITIONED_INSERT_SQL = """
+            INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost, departure_date)
+            VALUES (?, ?, ?, ?, ?, (SELECT departure_date FROM flight WHERE id = ?))
+            """;
+    private static final String PARTITIONED_UPSERT_SQL = PARTITIONED_INSERT_SQL + """
+            ON CONFLICT (flight_id, seat_no, departure_date) DO UPDATE
+            SET
+                passport_no = EXCLUDED.passport_no,
+                passenger_name = EXCLUDED.passenger_name,
+                cost = EXCLUDED.cost
+            """;
     private static final String DELETE_SQL = """
             DELETE FROM ticket
             WHERE id = ?
+            RETURNING flight_id, seat_no
             """;
+    // the self join returns the seat the ticket held before the update
     private static final String UPDATE_SQL = """
             UPDATE ticket
             SET
@@ -41,37 +69,97 @@ public class TicketDao implements Dao<Long, Ticket> {
                 flight_id = ?,
                 seat_no = ?,
                 cost = ?
-            WHERE id = ?
+            FROM ticket old
+            WHERE ticket.id = ? AND old.id = ticket.id
+            RETURNING old.flight_id, old.seat_no
+            """;
+    private static final String PARTITIONED_UPDATE_SQL = """
+            UPDATE ticket
+            SET
+                passport_no = ?,
+                passenger_name = ?,
+                flight_id = ?,
+                seat_no = ?,
+                cost = ?,
+                departure_date = (SELECT departure_date FROM flight WHERE id = ?)
+            FROM ticket old
+            WHERE ticket.id = ? AND old.id = ticket.id
+            RETURNING old.flight_id, old.seat_no
             """;
+    // first_name_count and passenger_ticket_count are kept up to date by triggers on ticket
     private static final String COMMON_NAMES_SQL = """
-            SELECT split_part(passenger_name, ' ', 1) AS name,  count(*) AS count
-            FROM ticket
+            SELECT name
+            FROM first_name_count
             GROUP BY name
-            ORDER BY count DESC, name
+            ORDER BY sum(ticket_count) DESC, name
             LIMIT ?
             """;
     private static final String COUNT_TICKETS_SQL = """
-            SELECT passenger_name, count(*) AS ticket_count
+            SELECT passenger_name, ticket_count
+            FROM passenger_ticket_count
+            ORDER BY ticket_count DESC
+            """;
+    private static final String LOCK_TICKETS_SQL = "LOCK TABLE ticket IN SHARE MODE";
+    private static final String CLEAR_PASSENGER_COUNTS_SQL = "DELETE FROM passenger_ticket_count";
+    private static final String CLEAR_FIRST_NAME_COUNTS_SQL = "DELETE FROM first_name_count";
+    private static final String REBUILD_PASSENGER_COUNTS_SQL = """
+            INSERT INTO passenger_ticket_count (passport_no, passenger_name, ticket_count)
+            SELECT passport_no, passenger_name, count(*)
             FROM ticket
             GROUP BY passport_no, passenger_name
-            ORDER BY ticket_count DESC;
+            """;
+    private static final String REBUILD_FIRST_NAME_COUNTS_SQL = """
+            INSERT INTO first_name_count (name, slot, ticket_count)
+            SELECT split_part(passenger_name, ' ', 1), id % 16, count(*)
+            FROM ticket
+            GROUP BY 1, 2
             """;
     private static final String FIND_ALL_SQL = """
             SELECT id, passport_no, passenger_name, flight_id, seat_no, cost
             FROM ticket
             """;
-    private static final String FILTERED_UPDATE_SQL = """
-            UPDATE ticket
-            SET %s
-            WHERE %s
-            """;
+    // positions of the FIND_ALL_SQL columns, every ticket query selects them in this order
+    private static final int ID_COLUMN = 1;
+    private static final int PASSPORT_NO_COLUMN = 2;
+    private static final int PASSENGER_NAME_COLUMN = 3;
+    private static final int FLIGHT_ID_COLUMN = 4;
+    private static final int SEAT_NO_COLUMN = 5;
+    private static final int COST_COLUMN = 6;
     private static final String FIND_BY_ID_SQL =
             FIND_ALL_SQL + "WHERE ID = ?";
+    private static final String FIND_ALL_BY_ID_SQL =
+            FIND_ALL_SQL + "WHERE id = ANY(?)";
 
     private static final String FIND_BY_FLIGHT_ID_SQL =
             FIND_ALL_SQL + "WHERE flight_id = ?";
 
+    private static final String FIND_PAGE_BY_ID_SQL = FIND_ALL_SQL + """
+            WHERE id > ?
+            ORDER BY id
+            LIMIT ?
+            """;
+    private static final String FIND_PAGE_BY_SEAT_SQL = FIND_ALL_SQL + """
+            WHERE (flight_id, seat_no) > (?, ?)
+            ORDER BY flight_id, seat_no
+            LIMIT ?
+            """;
+    private static final String FIND_ID_BOUNDS_SQL = """
+            SELECT pg_export_snapshot(), min(id), max(id)
+            FROM ticket
+            """;
+    private static final String FIND_ID_RANGE_SQL = FIND_ALL_SQL + """
+            WHERE id >= ? AND id < ?
+            ORDER BY id
+            """;
+    private static final boolean PARTITIONED = PartitionMaintenance.isEnabled();
+    private static final String insertSql = PARTITIONED ? PARTITIONED_INSERT_SQL : INSERT_SQL;
+    private static final String upsertSql = PARTITIONED ? PARTITIONED_UPSERT_SQL : UPSERT_SQL;
+    private static final String updateSql = PARTITIONED ? PARTITIONED_UPDATE_SQL : UPDATE_SQL;
+    private static final String ID_LISTING = "ticket-id";
+    private static final String SEAT_LISTING = "ticket-seat";
+
     private TicketDao() {
+        QueryMetrics.getInstance().registerSqlConstants(TicketDao.class);
     }
 
     public static TicketDao getInstance() {
@@ -80,23 +168,24 @@ public class TicketDao implements Dao<Long, Ticket> {
 
     @Override
     public Ticket save(Ticket ticket) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL,
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(insertSql,
                 Statement.RETURN_GENERATED_KEYS)) {
-            logger.info("Saving ticket to database");
-            logger.debug("{}", ticket);
+            logger.debug("Saving ticket to database");
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", ticket);
+            }
 
-            statement.setString(1, ticket.getPassportNo());
-            statement.setString(2, ticket.getPassengerName());
-            statement.setLong(3, ticket.getFlightId());
-            statement.setString(4, ticket.getSeatNo());
-            statement.setInt(5, ticket.getCost());
+            setStatementParameters(statement, ticket);
 
             statement.executeUpdate();
             ResultSet generatedKeys = statement.getGeneratedKeys();
 
             if (generatedKeys.next()) {
-                logger.info("Ticket was saved. Ticket ID = {}", generatedKeys.getLong(1));
                 ticket.setId(generatedKeys.getLong(1));
+                seatAvailability.ticketSaved(ticket);
+                analytics.ticketSaved(ticket);
+                logger.debug("Ticket was saved. Ticket ID = {}", ticket.getId());
                 return ticket;
             }
 
@@ -106,21 +195,89 @@ public class TicketDao implements Dao<Long, Ticket> {
         }
     }
 
+    @Override
+    public List<Ticket> saveAll(Collection<Ticket> tickets) {
+        try {
+            logger.info("Saving {} tickets to database", tickets.size());
+            List<Ticket> saved = BatchInsert.execute(insertSql, tickets, TicketDao::setStatementParameters,
+                    (generatedKeys, ticket) -> ticket.setId(generatedKeys.getLong("id")));
+            saved.forEach(seatAvailability::ticketSaved);
+            saved.forEach(analytics::ticketSaved);
+            return saved;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    /**
+     * Inserts the ticket, or overwrites the passenger and cost of the ticket
+     * for the same seat of the flight. Either way the ticket gets its id.
+     */
+    @Override
+    public Ticket upsert(Ticket ticket) {
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(upsertSql,
+                Statement.RETURN_GENERATED_KEYS)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Upserting ticket for seat {} of flight {}", ticket.getSeatNo(), ticket.getFlightId());
+            }
+
+            setStatementParameters(statement, ticket);
+            statement.executeUpdate();
+            ResultSet generatedKeys = statement.getGeneratedKeys();
+            if (generatedKeys.next()) {
+                ticket.setId(generatedKeys.getLong(1));
+                seatAvailability.ticketSaved(ticket);
+            }
+            return ticket;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public List<Ticket> upsertAll(Collection<Ticket> tickets) {
+        try {
+            logger.debug("Upserting {} tickets", tickets.size());
+            List<Ticket> upserted = BatchInsert.execute(upsertSql,
+                    BatchInsert.lastPerKey(tickets, ticket -> List.of(ticket.getFlightId(), ticket.getSeatNo())),
+                    TicketDao::setStatementParameters,
+                    (generatedKeys, ticket) -> ticket.setId(generatedKeys.getLong("id")));
+            upserted.forEach(seatAvailability::ticketSaved);
+            return upserted;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public boolean update(Long id, Ticket ticket) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
-            logger.info("Updating ticket with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(updateSql)) {
+            logger.debug("Updating ticket with ID {}", id);
 
             statement.setString(1, ticket.getSeatNo());
             statement.setString(2, ticket.getPassengerName());
             statement.setLong(3, ticket.getFlightId());
             statement.setString(4, ticket.getSeatNo());
             statement.setInt(5, ticket.getCost());
-            statement.setLong(6, id);
+            int idIndex = 6;
+            if (PARTITIONED) {
+                statement.setLong(idIndex++, ticket.getFlightId());
+            }
+            statement.setLong(idIndex, id);
 
-            logger.debug("Ticket with ID {} after updating {}", id, ticket);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Ticket with ID {} after updating {}", id, ticket);
+            }
 
-            return statement.executeUpdate() > 0;
+            ResultSet result = statement.executeQuery();
+            if (!result.next()) {
+                return false;
+            }
+            seatAvailability.ticketDeleted(result.getLong(1), result.getString(2));
+            seatAvailability.ticketSaved(ticket);
+            return true;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -128,10 +285,17 @@ public class TicketDao implements Dao<Long, Ticket> {
 
     @Override
     public boolean delete(Long id) {
-        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
-            logger.info("Deleting ticket with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            logger.debug("Deleting ticket with ID {}", id);
             statement.setLong(1, id);
-            return statement.executeUpdate() > 0;
+
+            ResultSet result = statement.executeQuery();
+            if (!result.next()) {
+                return false;
+            }
+            seatAvailability.ticketDeleted(result.getLong(1), result.getString(2));
+            return true;
         } catch (SQLException e) {
             throw new DaoException(e);
         }
@@ -139,8 +303,9 @@ public class TicketDao implements Dao<Long, Ticket> {
 
     @Override
     public Optional<Ticket> findById(Long id) {
-        try (PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
-            logger.info("Starting to find ticket with ID {}", id);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_ID_SQL)) {
+            logger.debug("Starting to find ticket with ID {}", id);
 
             statement.setLong(1, id);
             ResultSet result = statement.executeQuery();
@@ -149,7 +314,9 @@ public class TicketDao implements Dao<Long, Ticket> {
             if (result.next()) {
                 ticket = readTicket(result);
             }
-            logger.debug("{}", ticket);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{}", ticket);
+            }
 
             return Optional.ofNullable(ticket);
         } catch (SQLException e) {
@@ -157,18 +324,51 @@ public class TicketDao implements Dao<Long, Ticket> {
         }
     }
 
+    @Override
+    public Map<Long, Ticket> findAllById(Collection<Long> ids) {
+        Map<Long, Ticket> tickets = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return tickets;
+        }
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Starting to find {} tickets by ID", ids.size());
+            }
+
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            ResultSet result = statement.executeQuery();
+
+            while (result.next()) {
+                Ticket ticket = readTicket(result);
+                tickets.put(ticket.getId(), ticket);
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} tickets", tickets.size());
+            }
+
+            return tickets;
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public List<Ticket> findAll() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Starting to find all tickets");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL)) {
+            logger.debug("Starting to find all tickets");
 
             List<Ticket> tickets = new ArrayList<>();
-            ResultSet result = statement.executeQuery(FIND_ALL_SQL);
+            ResultSet result = statement.executeQuery();
 
             while (result.next()) {
                 tickets.add(readTicket(result));
             }
-            logger.debug("Found {} tickets", tickets.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} tickets", tickets.size());
+            }
 
             return tickets;
         } catch (SQLException e) {
@@ -176,41 +376,114 @@ public class TicketDao implements Dao<Long, Ticket> {
         }
     }
 
-    public int updateTickets(TicketFilter ticketFilter, TicketUpdateInfo updateInfo) {
-        Map<String, Object> whereParams = new HashMap<>();
-        Map<String, Object> setParams = new HashMap<>();
+    /**
+     * Streams all tickets through a server-side cursor without loading the table into memory.
+     * The stream holds a pooled connection and must be closed.
+     */
+    public Stream<Ticket> streamAll() {
+        logger.debug("Starting to stream all tickets");
+        return CursorStream.of(FIND_ALL_SQL, TicketDao::readTicket);
+    }
 
-        if (ticketFilter.getPassportNo() != null) {
-            whereParams.put("passport_no", "'" + ticketFilter.getPassportNo() + "'");
-        }
+    /**
+     * Reads all tickets ordered by id, splitting the table into id ranges that
+     * are read concurrently on up to {@code parallelism} pooled connections.
+     * All ranges see the same snapshot of the table.
+     */
+    public List<Ticket> findAllParallel(int parallelism) {
+        logger.debug("Starting to find all tickets in parallel");
+        return ParallelScan.list(FIND_ID_BOUNDS_SQL, FIND_ID_RANGE_SQL, TicketDao::readTicket, parallelism);
+    }
 
-        if (ticketFilter.getPassengerName() != null) {
-            whereParams.put("passenger_name", "'" + ticketFilter.getPassengerName() + "'");
-        }
+    /**
+     * Like {@link #findAllParallel(int)}, but hands every ticket to the action
+     * as soon as it is read, in no particular order and from several threads at
+     * once, so the table is never held in memory.
+     */
+    public void forEachParallel(int parallelism, Consumer<? super Ticket> action) {
+        logger.debug("Starting to scan all tickets in parallel");
+        ParallelScan.forEach(FIND_ID_BOUNDS_SQL, FIND_ID_RANGE_SQL, TicketDao::readTicket, parallelism, action);
+    }
 
-        if (ticketFilter.getFlightId() != null) {
-            whereParams.put("flight_id", ticketFilter.getFlightId());
-        }
+    /**
+     * Like {@link #forEachParallel(int, Consumer)}, running {@code onSnapshot}
+     * once the snapshot the scan reads has been taken.
+     */
+    void forEachParallel(int parallelism, Runnable onSnapshot, Consumer<? super Ticket> action) {
+        logger.debug("Starting to scan all tickets in parallel");
+        ParallelScan.forEach(FIND_ID_BOUNDS_SQL, FIND_ID_RANGE_SQL, TicketDao::readTicket, parallelism, onSnapshot,
+                action);
+    }
 
-        if (ticketFilter.getSeatNo() != null) {
-            whereParams.put("seat_no", "'" + ticketFilter.getSeatNo() + "'");
-        }
+    /**
+     * Keyset page of tickets ordered by id. Pass {@code null} for the first page
+     * and {@link Page#getNextToken()} for the following ones.
+     */
+    public Page<Ticket> findPage(String pageToken, int limit) {
+        checkLimit(limit);
+        String[] key = PageToken.decode(ID_LISTING, 1, pageToken);
+        long afterId = key == null ? Long.MIN_VALUE : Long.parseLong(key[0]);
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_PAGE_BY_ID_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Finding {} tickets after ID {}", limit, afterId);
+            }
+
+            statement.setLong(1, afterId);
+            statement.setInt(2, limit + 1);
+            List<Ticket> tickets = readTickets(statement.executeQuery(), limit + 1);
 
-        if (ticketFilter.getCost() != null) {
-            whereParams.put("cost", ticketFilter.getCost());
+            return PageToken.toPage(tickets, limit, ticket -> PageToken.encode(ID_LISTING, ticket.getId()));
+        } catch (SQLException e) {
+            throw new DaoException(e);
         }
+    }
+
+    /**
+     * Keyset page of tickets ordered by {@code (flight_id, seat_no)}, served by the
+     * unique index on these columns.
+     */
+    public Page<Ticket> findPageByFlightAndSeat(String pageToken, int limit) {
+        checkLimit(limit);
+        String[] key = PageToken.decode(SEAT_LISTING, 2, pageToken);
+        long afterFlightId = key == null ? Long.MIN_VALUE : Long.parseLong(key[0]);
+        String afterSeatNo = key == null ? "" : key[1];
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_PAGE_BY_SEAT_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Finding {} tickets after flight {} seat {}", limit, afterFlightId, afterSeatNo);
+            }
 
-        setParams.put("cost", updateInfo.getCost());
-        String setSql = setParams.entrySet()
-                .stream().map(e -> e.getKey() + " = " + e.getValue())
-                .collect(Collectors.joining(" , "));
+            statement.setLong(1, afterFlightId);
+            statement.setString(2, afterSeatNo);
+            statement.setInt(3, limit + 1);
+            List<Ticket> tickets = readTickets(statement.executeQuery(), limit + 1);
 
-        String whereSql = whereParams.entrySet()
-                .stream().map(e -> e.getKey() + " = " + e.getValue())
-                .collect(Collectors.joining(" AND "));
+            return PageToken.toPage(tickets, limit,
+                    ticket -> PageToken.encode(SEAT_LISTING, ticket.getFlightId(), ticket.getSeatNo()));
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(
-                FILTERED_UPDATE_SQL.formatted(setSql, whereSql))) {
+    /**
+     * Updates the tickets matching the filter. Called inside
+     * {@link by.javaguru.util.TransactionTemplate#execute} it joins that
+     * transaction.
+     */
+    public int updateTickets(TicketFilter ticketFilter, TicketUpdateInfo updateInfo) {
+        UpdateBuilder update = UpdateBuilder.update("ticket")
+                .set("cost", updateInfo.getCost())
+                .where("passport_no", ticketFilter.getPassportNo())
+                .where("passenger_name", ticketFilter.getPassengerName())
+                .where("flight_id", ticketFilter.getFlightId())
+                .where("seat_no", ticketFilter.getSeatNo())
+                .where("cost", ticketFilter.getCost());
+
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = update.prepare(connection)) {
             return statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -218,9 +491,9 @@ public class TicketDao implements Dao<Long, Ticket> {
     }
 
     public List<Ticket> findTicketsByFlightId(Long flightId) {
-        try (PreparedStatement statement =
-                     connection.prepareStatement(FIND_BY_FLIGHT_ID_SQL)) {
-            logger.info("Starting to find all tickets with flight_id = {}", flightId);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(FIND_BY_FLIGHT_ID_SQL)) {
+            logger.debug("Starting to find all tickets with flight_id = {}", flightId);
             List<Ticket> tickets = new ArrayList<>();
             statement.setLong(1, flightId);
             ResultSet result = statement.executeQuery();
@@ -229,7 +502,9 @@ public class TicketDao implements Dao<Long, Ticket> {
                 tickets.add(readTicket(result));
             }
 
-            logger.debug("Found {} tickets", tickets.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} tickets", tickets.size());
+            }
             return tickets;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -238,9 +513,11 @@ public class TicketDao implements Dao<Long, Ticket> {
 
 
     public List<String> findMostCommonNames(int limit) {
-        try (PreparedStatement statement =
-                     connection.prepareStatement(COMMON_NAMES_SQL)) {
-            logger.info("Finding first {} most common names", limit);
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(COMMON_NAMES_SQL)) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Finding first {} most common names", limit);
+            }
 
             List<String> names = new ArrayList<>();
 
@@ -248,10 +525,12 @@ public class TicketDao implements Dao<Long, Ticket> {
             ResultSet resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                names.add(resultSet.getString("name"));
+                names.add(resultSet.getString(1));
             }
 
-            logger.debug("Found {} names", names.size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Found {} names", names.size());
+            }
             return names;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -259,32 +538,89 @@ public class TicketDao implements Dao<Long, Ticket> {
     }
 
     public Map<String, Integer> findPassengerTotalTicketCount() {
-        try (Statement statement = connection.createStatement()) {
-            logger.info("Finding ticket counts for every user");
+        try (Connection connection = ConnectionManager.open();
+             PreparedStatement statement = connection.prepareStatement(COUNT_TICKETS_SQL)) {
+            logger.debug("Finding ticket counts for every user");
 
             Map<String, Integer> tickets = new HashMap<>();
 
-            ResultSet result = statement.executeQuery(COUNT_TICKETS_SQL);
+            ResultSet result = statement.executeQuery();
             while (result.next()) {
-                tickets.put(result.getString("passenger_name"),
-                        result.getInt("ticket_count"));
+                tickets.put(result.getString(1), result.getInt(2));
             }
 
-            logger.debug("Counted tickets for {} names", tickets.keySet().size());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Counted tickets for {} names", tickets.keySet().size());
+            }
             return tickets;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Recounts the passenger and first name summary tables from {@code ticket}.
+     * Meant for repairs, e.g. after rows were loaded with triggers disabled.
+     * Writes to {@code ticket} wait until the rebuild commits; reads keep
+     * seeing the old counts meanwhile, so the tables are cleared with
+     * {@code DELETE} rather than an exclusively locking {@code TRUNCATE}.
+     * Returns the number of distinct passengers.
+     */
+    public int rebuildPassengerCounts() {
+        logger.info("Rebuilding passenger ticket counts");
+        return TransactionTemplate.READ_WRITE.execute(connection -> {
+            try (PreparedStatement lock = connection.prepareStatement(LOCK_TICKETS_SQL);
+                 PreparedStatement clearPassengers = connection.prepareStatement(CLEAR_PASSENGER_COUNTS_SQL);
+                 PreparedStatement clearNames = connection.prepareStatement(CLEAR_FIRST_NAME_COUNTS_SQL)) {
+                lock.execute();
+                clearPassengers.executeUpdate();
+                clearNames.executeUpdate();
+            }
+            int passengers;
+            try (PreparedStatement statement = connection.prepareStatement(REBUILD_PASSENGER_COUNTS_SQL)) {
+                passengers = statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(REBUILD_FIRST_NAME_COUNTS_SQL)) {
+                statement.executeUpdate();
+            }
+            logger.info("Counted tickets of {} passengers", passengers);
+            return passengers;
+        });
+    }
+
+    private static void setStatementParameters(PreparedStatement statement, Ticket ticket) throws SQLException {
+        statement.setString(1, ticket.getPassportNo());
+        statement.setString(2, ticket.getPassengerName());
+        statement.setLong(3, ticket.getFlightId());
+        statement.setString(4, ticket.getSeatNo());
+        statement.setInt(5, ticket.getCost());
+        if (PARTITIONED) {
+            statement.setLong(6, ticket.getFlightId());
+        }
+    }
+
+    private static List<Ticket> readTickets(ResultSet result, int expectedSize) throws SQLException {
+        List<Ticket> tickets = new ArrayList<>(expectedSize);
+        while (result.next()) {
+            tickets.add(readTicket(result));
+        }
+        return tickets;
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+    }
+
     private static Ticket readTicket(ResultSet result) throws SQLException {
         return Ticket.builder()
-                .id(result.getLong("id"))
-                .passportNo(result.getString("passport_no"))
-                .passengerName(result.getString("passenger_name"))
-                .flightId(result.getLong("flight_id"))
-                .seatNo(result.getString("seat_no"))
-                .cost(result.getInt("cost"))
+                .id(result.getLong(ID_COLUMN))
+                .passportNo(result.getString(PASSPORT_NO_COLUMN))
+                .passengerName(result.getString(PASSENGER_NAME_COLUMN))
+                .flightId(result.getLong(FLIGHT_ID_COLUMN))
+                .seatNo(result.getString(SEAT_NO_COLUMN))
+                .cost(result.getInt(COST_COLUMN))
                 .build();
     }
 }
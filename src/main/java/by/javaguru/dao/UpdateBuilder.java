@@ -0,0 +1,80 @@
+package by.javaguru.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Builds a parameterized {@code UPDATE} from optional values. {@code null} values
+ * are skipped, and columns are emitted in sorted order, so the same set of
+ * present columns always produces the same SQL text and reuses one prepared plan.
+ */
+class UpdateBuilder {
+    private static final String UPDATE_SQL = """
+            UPDATE %s
+            SET %s
+            WHERE %s
+            """;
+
+    private final String table;
+    private final SortedMap<String, Object> setValues = new TreeMap<>();
+    private final SortedMap<String, Object> whereValues = new TreeMap<>();
+
+    private UpdateBuilder(String table) {
+        this.table = table;
+    }
+
+    static UpdateBuilder update(String table) {
+        return new UpdateBuilder(table);
+    }
+
+    UpdateBuilder set(String column, Object value) {
+        if (value != null) {
+            setValues.put(column, value);
+        }
+        return this;
+    }
+
+    UpdateBuilder where(String column, Object value) {
+        if (value != null) {
+            whereValues.put(column, value);
+        }
+        return this;
+    }
+
+    String toSql() {
+        if (setValues.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update in " + table);
+        }
+        if (whereValues.isEmpty()) {
+            throw new IllegalArgumentException("Refusing to update every row of " + table);
+        }
+        String setSql = setValues.keySet().stream()
+                .map(column -> column + " = ?")
+                .collect(Collectors.joining(", "));
+        String whereSql = whereValues.keySet().stream()
+                .map(column -> column + " = ?")
+                .collect(Collectors.joining(" AND "));
+        return UPDATE_SQL.formatted(table, setSql, whereSql);
+    }
+
+    PreparedStatement prepare(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(toSql());
+        try {
+            int index = 1;
+            for (Object value : setValues.values()) {
+                statement.setObject(index++, value);
+            }
+            for (Object value : whereValues.values()) {
+                statement.setObject(index++, value);
+            }
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package by.javaguru.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link Dao} of entities with a natural key, on which an imported row is
+ * matched to the stored one.
+ */
+public interface UpsertDao <K, E> extends Dao<K, E> {
+    E upsert(E entity);
+    List<E> upsertAll(Collection<E> entities);
+}
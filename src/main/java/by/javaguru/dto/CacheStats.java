@@ -0,0 +1,22 @@
+package by.javaguru.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long loads;
+    private final long totalLoadNanos;
+    private final int size;
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public double getAverageLoadNanos() {
+        return loads == 0 ? 0 : (double) totalLoadNanos / loads;
+    }
+}
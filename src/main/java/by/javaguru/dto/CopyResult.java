@@ -0,0 +1,13 @@
+package by.javaguru.dto;
+
+import lombok.Data;
+
+@Data
+public class CopyResult {
+    private final long rows;
+    private final long elapsedNanos;
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+    }
+}
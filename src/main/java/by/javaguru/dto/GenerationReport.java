@@ -0,0 +1,13 @@
+package by.javaguru.dto;
+
+import lombok.Data;
+
+@Data
+public class GenerationReport {
+    private final int airports;
+    private final int aircraft;
+    private final long seats;
+    private final int flights;
+    private final long tickets;
+    private final long elapsedNanos;
+}
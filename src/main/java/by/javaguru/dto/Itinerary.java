@@ -0,0 +1,22 @@
+package by.javaguru.dto;
+
+import by.javaguru.entity.Aircraft;
+import by.javaguru.entity.Airport;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Ticket;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Read model of a flight with its airports, aircraft and sold tickets. Airport
+ * and aircraft instances are shared between itineraries loaded by one query.
+ */
+@Data
+public class Itinerary {
+    private final Flight flight;
+    private final Airport departureAirport;
+    private final Airport arrivalAirport;
+    private final Aircraft aircraft;
+    private final List<Ticket> tickets;
+}
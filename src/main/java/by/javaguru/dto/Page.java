@@ -0,0 +1,18 @@
+package by.javaguru.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class Page<E> {
+    private final List<E> items;
+    /**
+     * Opaque continuation token for the next page, {@code null} on the last page.
+     */
+    private final String nextToken;
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+}
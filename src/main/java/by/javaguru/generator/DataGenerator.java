@@ -0,0 +1,336 @@
+package by.javaguru.generator;
+
+import by.javaguru.dao.AircraftDao;
+import by.javaguru.dao.AirportDao;
+import by.javaguru.dao.CopyLoader;
+import by.javaguru.dao.FlightDao;
+import by.javaguru.dto.GenerationReport;
+import by.javaguru.entity.Aircraft;
+import by.javaguru.entity.Airport;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Seat;
+import by.javaguru.entity.Ticket;
+import by.javaguru.util.ConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Fills the schema with a synthetic data set: airports, aircraft with full seat
+ * maps, flights over a date range and tickets sold at a target load factor. The
+ * same config on the same starting schema always produces the same rows.
+ * <p>
+ * Airports, seats and tickets are written with {@link CopyLoader}. Aircraft and
+ * flights go through batched inserts, because seats and tickets need their
+ * generated ids. Tickets are produced lazily while the COPY runs, so the size
+ * of the ticket table is not limited by memory.
+ */
+public class DataGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(DataGenerator.class);
+    private static final int MAX_PASSENGERS = 10_000_000;
+    private static final int CANCELLED_PERCENT = 3;
+    private static final int BUSINESS_ROWS = 3;
+    // a passenger is picked as pool * u^3: the first 10% of the pool buy about 46% of tickets
+    private static final double PASSENGER_SKEW = 3;
+    // the first names of each list are the most common ones
+    private static final double NAME_SKEW = 2;
+
+    private record Model(String name, String letters, int rows) {
+    }
+
+    private static final List<Model> MODELS = List.of(
+            new Model("Боинг 737-800", "ABCDEF", 30),
+            new Model("Аэробус A320-200", "ABCDEF", 28),
+            new Model("Аэробус A321neo", "ABCDEF", 35),
+            new Model("Суперджет-100", "ABCDE", 20),
+            new Model("Эмбраер 175", "ABCD", 20),
+            new Model("Боинг 777-300", "ABCDEFGHK", 42),
+            new Model("Аэробус A330-300", "ABCDEFGH", 36));
+
+    private static final String[][] AIRPORTS = {
+            {"MNK", "Беларусь", "Минск"}, {"LDN", "Англия", "Лондон"}, {"MSK", "Россия", "Москва"},
+            {"BSL", "Испания", "Барселона"}, {"GME", "Беларусь", "Гомель"}, {"BQT", "Беларусь", "Брест"},
+            {"VTB", "Беларусь", "Витебск"}, {"GNA", "Беларусь", "Гродно"}, {"LED", "Россия", "Санкт-Петербург"},
+            {"KZN", "Россия", "Казань"}, {"SVX", "Россия", "Екатеринбург"}, {"OVB", "Россия", "Новосибирск"},
+            {"WAW", "Польша", "Варшава"}, {"KRK", "Польша", "Краков"}, {"VNO", "Литва", "Вильнюс"},
+            {"RIX", "Латвия", "Рига"}, {"TLL", "Эстония", "Таллин"}, {"HEL", "Финляндия", "Хельсинки"},
+            {"BER", "Германия", "Берлин"}, {"MUC", "Германия", "Мюнхен"}, {"FRA", "Германия", "Франкфурт"},
+            {"PAR", "Франция", "Париж"}, {"NCE", "Франция", "Ницца"}, {"MAD", "Испания", "Мадрид"},
+            {"ROM", "Италия", "Рим"}, {"MIL", "Италия", "Милан"}, {"VIE", "Австрия", "Вена"},
+            {"PRG", "Чехия", "Прага"}, {"BUD", "Венгрия", "Будапешт"}, {"IST", "Турция", "Стамбул"},
+            {"AYT", "Турция", "Анталья"}, {"DXB", "ОАЭ", "Дубай"}, {"TBS", "Грузия", "Тбилиси"},
+            {"EVN", "Армения", "Ереван"}, {"ALA", "Казахстан", "Алматы"}, {"TAS", "Узбекистан", "Ташкент"},
+            {"AMS", "Нидерланды", "Амстердам"}, {"BRU", "Бельгия", "Брюссель"}, {"ZRH", "Швейцария", "Цюрих"},
+            {"ATH", "Греция", "Афины"}};
+
+    private static final String[] AIRLINES = {"B2", "SU", "LO", "LH", "AF", "TK", "PS", "BT", "A3", "OS"};
+    private static final String[] PASSPORT_SERIES = {"MP", "HB", "KH", "AB", "BM", "MC", "KB"};
+    private static final String[] MALE_NAMES = {"Александр", "Дмитрий", "Максим", "Иван", "Андрей", "Сергей",
+            "Алексей", "Артём", "Михаил", "Никита", "Евгений", "Павел", "Владимир", "Денис", "Кирилл", "Егор",
+            "Олег", "Роман", "Игорь", "Юрий", "Константин", "Степан", "Эдуард", "Виктор"};
+    private static final String[] FEMALE_NAMES = {"Анастасия", "Мария", "Анна", "Екатерина", "Ольга", "Елена",
+            "Татьяна", "Наталья", "Юлия", "Светлана", "Дарья", "Ирина", "Полина", "Виктория", "Людмила",
+            "Лариса", "Алина", "Ксения", "Жанна", "Вероника"};
+    // masculine forms, the feminine one is formed by appending "а"
+    private static final String[] SURNAMES = {"Иванов", "Петров", "Смирнов", "Кузнецов", "Попов", "Васильев",
+            "Соколов", "Новиков", "Морозов", "Волков", "Лебедев", "Козлов", "Степанов", "Павлов", "Семенов",
+            "Голубев", "Виноградов", "Богданов", "Воробьев", "Федоров", "Михайлов", "Беляев", "Тарасов", "Белов",
+            "Комаров", "Орлов", "Киселев", "Макаров", "Андреев", "Ковалев", "Ильин", "Гусев", "Титов", "Кузьмин",
+            "Кудрявцев", "Баранов", "Куликов", "Алексеев", "Яковлев", "Сорокин", "Сергеев", "Романов", "Захаров",
+            "Борисов", "Королев", "Герасимов", "Пономарев", "Григорьев", "Лазарев", "Медведев", "Ершов", "Никитин",
+            "Соболев", "Рябов", "Поляков", "Цветков", "Данилов", "Жуков", "Фролов", "Журавлев"};
+
+    private final GeneratorConfig config;
+    private final SplittableRandom random;
+
+    public DataGenerator(GeneratorConfig config) {
+        if (config.getAirports() < 2 || config.getAircraft() < 1) {
+            throw new IllegalArgumentException("At least two airports and one aircraft are required");
+        }
+        if (config.getLoadFactor() < 0 || config.getLoadFactor() > 1) {
+            throw new IllegalArgumentException("Load factor must be between 0 and 1: " + config.getLoadFactor());
+        }
+        if (config.getPassengers() < 1 || config.getPassengers() > MAX_PASSENGERS) {
+            throw new IllegalArgumentException("Passenger pool must be between 1 and " + MAX_PASSENGERS);
+        }
+        this.config = config;
+        this.random = new SplittableRandom(config.getSeed());
+    }
+
+    public static void main(String[] args) {
+        try {
+            GenerationReport report = new DataGenerator(GeneratorConfig.fromProperties()).generate();
+            logger.info("Generated {}", report);
+        } finally {
+            ConnectionManager.close();
+        }
+    }
+
+    public GenerationReport generate() {
+        long start = System.nanoTime();
+
+        List<Airport> airports = generateAirports();
+        CopyLoader.airports().load(airports, CopyLoader.Format.BINARY);
+
+        List<Aircraft> aircrafts = new ArrayList<>(config.getAircraft());
+        Map<Integer, Model> models = new HashMap<>();
+        for (int i = 0; i < config.getAircraft(); i++) {
+            aircrafts.add(Aircraft.builder().model(MODELS.get(random.nextInt(MODELS.size())).name()).build());
+        }
+        AircraftDao.getInstance().saveAll(aircrafts);
+        for (Aircraft aircraft : aircrafts) {
+            models.put(aircraft.getId(), modelOf(aircraft.getModel()));
+        }
+        Map<Model, List<String>> seatMaps = MODELS.stream()
+                .collect(Collectors.toMap(model -> model, DataGenerator::seatMap));
+        List<Seat> seats = new ArrayList<>();
+        aircrafts.forEach(aircraft -> seatMaps.get(models.get(aircraft.getId())).forEach(seatNo ->
+                seats.add(Seat.builder().aircraftId(aircraft.getId()).seatNo(seatNo).build())));
+        CopyLoader.seats().load(seats, CopyLoader.Format.BINARY);
+
+        List<Flight> flights = generateFlights(airports, aircrafts);
+        FlightDao.getInstance().saveAll(flights);
+
+        Map<Long, List<String>> seatsByAircraft = new HashMap<>();
+        models.forEach((id, model) -> seatsByAircraft.put(id.longValue(), seatMaps.get(model)));
+        long tickets = CopyLoader.tickets()
+                .load(new TicketIterator(flights, seatsByAircraft), CopyLoader.Format.BINARY)
+                .getRows();
+
+        return new GenerationReport(airports.size(), aircrafts.size(), seats.size(), flights.size(), tickets,
+                System.nanoTime() - start);
+    }
+
+    private List<Airport> generateAirports() {
+        Set<String> usedCodes = AirportDao.getInstance().findAll().stream()
+                .map(Airport::getCode)
+                .collect(Collectors.toCollection(HashSet::new));
+        List<Airport> airports = new ArrayList<>(config.getAirports());
+
+        for (int i = 0; i < AIRPORTS.length && airports.size() < config.getAirports(); i++) {
+            String[] airport = AIRPORTS[i];
+            if (usedCodes.add(airport[0])) {
+                airports.add(Airport.builder().code(airport[0]).country(airport[1]).city(airport[2]).build());
+            }
+        }
+        while (airports.size() < config.getAirports()) {
+            String code = "" + randomLetter() + randomLetter() + randomLetter();
+            if (usedCodes.add(code)) {
+                airports.add(Airport.builder().code(code).country("Страна " + code).city("Город " + code).build());
+            }
+        }
+        return airports;
+    }
+
+    private List<Flight> generateFlights(List<Airport> airports, List<Aircraft> aircrafts) {
+        LocalDate startDate = config.getStartDate();
+        // flights before the middle of the range are already over
+        LocalDateTime now = startDate.plusDays(config.getDays() / 2).atStartOfDay();
+        List<Flight> flights = new ArrayList<>(config.getDays() * config.getFlightsPerDay());
+        Set<String> scheduled = new HashSet<>();
+
+        for (int day = 0; day < config.getDays(); day++) {
+            LocalDateTime midnight = startDate.plusDays(day).atStartOfDay();
+            for (int i = 0; i < config.getFlightsPerDay(); i++) {
+                int from = random.nextInt(airports.size());
+                int to = (from + 1 + random.nextInt(airports.size() - 1)) % airports.size();
+                String departureCode = airports.get(from).getCode();
+                String arrivalCode = airports.get(to).getCode();
+                int route = routeHash(departureCode, arrivalCode);
+                String flightNo = AIRLINES[route % AIRLINES.length] + (1000 + route / AIRLINES.length % 9000);
+                LocalDateTime departure = midnight.plusMinutes(5L * random.nextInt(24 * 12));
+                // flight number and departure identify a flight, take another slot on a clash
+                while (!scheduled.add(flightNo + departure)) {
+                    departure = midnight.plusMinutes(5L * random.nextInt(24 * 12));
+                }
+
+                String status;
+                if (departure.isAfter(now)) {
+                    status = "SCHEDULED";
+                } else {
+                    status = random.nextInt(100) < CANCELLED_PERCENT ? "CANCELLED" : "ARRIVED";
+                }
+
+                flights.add(Flight.builder()
+                        .flightNo(flightNo)
+                        .departureDate(departure)
+                        .departureAirportCode(departureCode)
+                        .arrivalDate(departure.plusMinutes(routeMinutes(route)))
+                        .arrivalAirportCode(arrivalCode)
+                        .aircraftId(aircrafts.get(random.nextInt(aircrafts.size())).getId().longValue())
+                        .status(status)
+                        .build());
+            }
+        }
+        return flights;
+    }
+
+    private int routeHash(String departureCode, String arrivalCode) {
+        long hash = mix(config.getSeed() ^ (departureCode + arrivalCode).hashCode());
+        return (int) (hash >>> 33);
+    }
+
+    private static int routeMinutes(int route) {
+        return 50 + route % 600;
+    }
+
+    private char randomLetter() {
+        return (char) ('A' + random.nextInt(26));
+    }
+
+    private static Model modelOf(String name) {
+        return MODELS.stream()
+                .filter(model -> model.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static List<String> seatMap(Model model) {
+        List<String> seatNos = new ArrayList<>(model.rows() * model.letters().length());
+        for (int row = 1; row <= model.rows(); row++) {
+            for (char letter : model.letters().toCharArray()) {
+                seatNos.add(letter + String.valueOf(row));
+            }
+        }
+        return seatNos;
+    }
+
+    /**
+     * The splitmix64 finalizer, spreads close inputs over the whole long range.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static double unit(long bits) {
+        return (bits & ((1L << 53) - 1)) * 0x1.0p-53;
+    }
+
+    private static String skewedPick(String[] values, double unit) {
+        return values[(int) (values.length * Math.pow(unit, NAME_SKEW))];
+    }
+
+    private final class TicketIterator implements Iterator<Ticket> {
+        private final List<Flight> flights;
+        private final Map<Long, List<String>> seatsByAircraft;
+        private int flightIndex;
+        private int seatIndex = -1;
+        private boolean advanced;
+
+        private TicketIterator(List<Flight> flights, Map<Long, List<String>> seatsByAircraft) {
+            this.flights = flights;
+            this.seatsByAircraft = seatsByAircraft;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!advanced) {
+                advance();
+                advanced = true;
+            }
+            return flightIndex < flights.size();
+        }
+
+        @Override
+        public Ticket next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+
+            Flight flight = flights.get(flightIndex);
+            String seatNo = seatsByAircraft.get(flight.getAircraftId()).get(seatIndex);
+            int passenger = (int) (config.getPassengers() * Math.pow(random.nextDouble(), PASSENGER_SKEW));
+            long identity = mix(config.getSeed() ^ passenger);
+
+            boolean female = (identity & 1) == 0;
+            String firstName = skewedPick(female ? FEMALE_NAMES : MALE_NAMES, unit(identity >>> 1));
+            String surname = skewedPick(SURNAMES, unit(mix(identity)));
+            // the multiplier is coprime with 10^7, so different passengers never share a number
+            long passportDigits = Math.floorMod(passenger * 7_368_787L + config.getSeed(), 10_000_000L);
+
+            int route = routeHash(flight.getDepartureAirportCode(), flight.getArrivalAirportCode());
+            double cost = (40 + routeMinutes(route) / 2.0) * (0.8 + 0.4 * random.nextDouble());
+            if (Integer.parseInt(seatNo.substring(1)) <= BUSINESS_ROWS) {
+                cost *= 2.5;
+            }
+
+            return Ticket.builder()
+                    .passportNo(PASSPORT_SERIES[(int) ((identity >>> 40) % PASSPORT_SERIES.length)]
+                                + "%07d".formatted(passportDigits))
+                    .passengerName(firstName + " " + (female ? surname + "а" : surname))
+                    .flightId(flight.getId())
+                    .seatNo(seatNo)
+                    .cost((int) Math.round(cost))
+                    .build();
+        }
+
+        // moves to the next seat that is sold, drawing one random number per seat
+        private void advance() {
+            while (flightIndex < flights.size()) {
+                List<String> seatNos = seatsByAircraft.get(flights.get(flightIndex).getAircraftId());
+                while (++seatIndex < seatNos.size()) {
+                    if (random.nextDouble() < config.getLoadFactor()) {
+                        return;
+                    }
+                }
+                flightIndex++;
+                seatIndex = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package by.javaguru.generator;
+
+import by.javaguru.util.PropertiesUtil;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+@Builder
+@Getter
+public class GeneratorConfig {
+    private static final String SEED_KEY = "generator.seed";
+    private static final String AIRPORTS_KEY = "generator.airports";
+    private static final String AIRCRAFT_KEY = "generator.aircraft";
+    private static final String START_DATE_KEY = "generator.startDate";
+    private static final String DAYS_KEY = "generator.days";
+    private static final String FLIGHTS_PER_DAY_KEY = "generator.flightsPerDay";
+    private static final String LOAD_FACTOR_KEY = "generator.loadFactor";
+    private static final String PASSENGERS_KEY = "generator.passengers";
+
+    @Builder.Default
+    private final long seed = 42;
+    @Builder.Default
+    private final int airports = 30;
+    @Builder.Default
+    private final int aircraft = 20;
+    @Builder.Default
+    private final LocalDate startDate = LocalDate.of(2024, 1, 1);
+    @Builder.Default
+    private final int days = 30;
+    @Builder.Default
+    private final int flightsPerDay = 100;
+    /**
+     * Share of seats sold on every flight, between 0 and 1.
+     */
+    @Builder.Default
+    private final double loadFactor = 0.85;
+    /**
+     * Size of the passenger pool tickets are drawn from, at most 10 million so
+     * that passport numbers stay unique.
+     */
+    @Builder.Default
+    private final int passengers = 100_000;
+
+    public static GeneratorConfig fromProperties() {
+        GeneratorConfig defaults = GeneratorConfig.builder().build();
+        return GeneratorConfig.builder()
+                .seed(PropertiesUtil.getLong(SEED_KEY, defaults.seed))
+                .airports(PropertiesUtil.getInt(AIRPORTS_KEY, defaults.airports))
+                .aircraft(PropertiesUtil.getInt(AIRCRAFT_KEY, defaults.aircraft))
+                .startDate(LocalDate.parse(PropertiesUtil.get(START_DATE_KEY, defaults.startDate.toString())))
+                .days(PropertiesUtil.getInt(DAYS_KEY, defaults.days))
+                .flightsPerDay(PropertiesUtil.getInt(FLIGHTS_PER_DAY_KEY, defaults.flightsPerDay))
+                .loadFactor(PropertiesUtil.getDouble(LOAD_FACTOR_KEY, defaults.loadFactor))
+                .passengers(PropertiesUtil.getInt(PASSENGERS_KEY, defaults.passengers))
+                .build();
+    }
+}
@@ -0,0 +1,13 @@
+package by.javaguru.metrics;
+
+/**
+ * Receives every finished execution. Called on the thread that ran the query,
+ * so implementations must be fast and thread-safe.
+ */
+@FunctionalInterface
+public interface MetricsSink {
+    void onQuery(QueryEvent event);
+
+    default void onConnectionWait(long waitNanos) {
+    }
+}
@@ -0,0 +1,30 @@
+package by.javaguru.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long elapsedNanos, long rowCount, boolean failed) {
+        latency.record(elapsedNanos);
+        rows.add(rowCount);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    OperationStats snapshot() {
+        return new OperationStats(name, latency.getCount(), errors.sum(), rows.sum(),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.5)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.99)),
+                TimeUnit.NANOSECONDS.toMicros(latency.getMax()));
+    }
+}
@@ -0,0 +1,32 @@
+package by.javaguru.metrics;
+
+import lombok.Data;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point-in-time view of one operation, latencies are in microseconds.
+ */
+@Data
+public class OperationStats {
+    private final String name;
+    private final long count;
+    private final long errors;
+    private final long rows;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    // lets JMX clients rebuild the object from its CompositeData
+    @ConstructorProperties({"name", "count", "errors", "rows", "p50Micros", "p99Micros", "maxMicros"})
+    public OperationStats(String name, long count, long errors, long rows,
+                          long p50Micros, long p99Micros, long maxMicros) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.rows = rows;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+}
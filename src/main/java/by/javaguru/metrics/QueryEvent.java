@@ -0,0 +1,10 @@
+package by.javaguru.metrics;
+
+/**
+ * One finished statement execution. {@code operation} is the name of the SQL
+ * constant, such as {@code TicketDao.FIND_BY_ID_SQL}; {@code error} is
+ * {@code null} when the execution succeeded.
+ */
+public record QueryEvent(String operation, String sql, int parameterCount, long elapsedNanos, long rows,
+                         Throwable error) {
+}
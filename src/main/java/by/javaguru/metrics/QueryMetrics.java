@@ -0,0 +1,349 @@
+package by.javaguru.metrics;
+
+import by.javaguru.util.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Latency histograms, row counts and error counters for every SQL statement
+ * executed through the connection pool, plus the time spent waiting for a
+ * connection. Statements are named after the DAO constant holding their SQL,
+ * e.g. {@code TicketDao.FIND_BY_ID_SQL}. SQL that was not registered is named
+ * after its first line.
+ * <p>
+ * The metrics are published over JMX as {@value #OBJECT_NAME} and passed to
+ * every registered {@link MetricsSink}.
+ */
+public class QueryMetrics implements QueryMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+    private static final String OBJECT_NAME = "by.javaguru:type=QueryMetrics";
+    private static final String ENABLED_KEY = "db.metrics.enabled";
+    private static final String SLOW_QUERY_KEY = "db.metrics.slowQueryMs";
+    private static final int MAX_NAME_LENGTH = 60;
+    private static final QueryMetrics INSTANCE = new QueryMetrics(
+            PropertiesUtil.getBoolean(ENABLED_KEY, true), PropertiesUtil.getLong(SLOW_QUERY_KEY, 500));
+
+    private final boolean enabled;
+    private final SlowQueryLog slowQueryLog;
+    private final Map<String, SqlInfo> sqlInfo = new ConcurrentHashMap<>();
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final List<MetricsSink> sinks = new CopyOnWriteArrayList<>();
+    private volatile OperationMetrics connectionWait = new OperationMetrics("connection-wait");
+
+    private record SqlInfo(String name, String sql, int parameterCount) {
+    }
+
+    private QueryMetrics(boolean enabled, long slowQueryMs) {
+        this.enabled = enabled;
+        this.slowQueryLog = new SlowQueryLog(slowQueryMs);
+        sinks.add(slowQueryLog);
+
+        if (enabled) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                logger.warn("Failed to register {} MBean", OBJECT_NAME, e);
+            }
+        }
+    }
+
+    public static QueryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Names every static {@code String} field of {@code owner} ending with
+     * {@code _SQL}, so executions of that SQL are reported as
+     * {@code Owner.FIELD_NAME}.
+     */
+    public void registerSqlConstants(Class<?> owner) {
+        for (Field field : owner.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType() != String.class
+                || !field.getName().endsWith("_SQL")) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                String sql = (String) field.get(null);
+                sqlInfo.put(sql, new SqlInfo(owner.getSimpleName() + "." + field.getName(), sql,
+                        countParameters(sql)));
+            } catch (IllegalAccessException e) {
+                logger.warn("Cannot read SQL constant {}.{}", owner.getSimpleName(), field.getName(), e);
+            }
+        }
+    }
+
+    public void addSink(MetricsSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(MetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Wraps a statement so that its executions are timed. Queries are measured
+     * until their result set is exhausted or closed, which includes fetching.
+     */
+    public PreparedStatement instrument(PreparedStatement statement, String sql) {
+        if (!enabled) {
+            return statement;
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(statement, infoOf(sql)));
+    }
+
+    /**
+     * Records an execution that does not go through a prepared statement,
+     * such as {@code COPY}.
+     */
+    public void record(String operation, String sql, long elapsedNanos, long rows, Throwable error) {
+        if (enabled) {
+            record(new QueryEvent(operation, sql, 0, elapsedNanos, rows, error));
+        }
+    }
+
+    /**
+     * Records the time a borrow waited for a connection. Borrows that gave up
+     * are counted as errors of the connection wait.
+     */
+    public void recordConnectionWait(long waitNanos, boolean timedOut) {
+        if (!enabled) {
+            return;
+        }
+        connectionWait.record(waitNanos, 0, timedOut);
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.onConnectionWait(waitNanos);
+            } catch (RuntimeException e) {
+                logger.warn("Metrics sink {} failed", sink, e);
+            }
+        }
+    }
+
+    public OperationStats getOperation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        return metrics == null ? new OperationStats(name, 0, 0, 0, 0, 0, 0) : metrics.snapshot();
+    }
+
+    @Override
+    public SortedMap<String, OperationStats> getOperations() {
+        SortedMap<String, OperationStats> snapshot = new TreeMap<>();
+        operations.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public OperationStats getConnectionWait() {
+        return connectionWait.snapshot();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMs() {
+        return slowQueryLog.getThresholdMs();
+    }
+
+    @Override
+    public void setSlowQueryThresholdMs(long thresholdMs) {
+        slowQueryLog.setThresholdMs(thresholdMs);
+    }
+
+    @Override
+    public void reset() {
+        operations.clear();
+        connectionWait = new OperationMetrics("connection-wait");
+    }
+
+    private void record(QueryEvent event) {
+        operations.computeIfAbsent(event.operation(), OperationMetrics::new)
+                .record(event.elapsedNanos(), event.rows(), event.error() != null);
+        for (MetricsSink sink : sinks) {
+            try {
+                sink.onQuery(event);
+            } catch (RuntimeException e) {
+                logger.warn("Metrics sink {} failed", sink, e);
+            }
+        }
+    }
+
+    private SqlInfo infoOf(String sql) {
+        SqlInfo info = sqlInfo.get(sql);
+        if (info != null) {
+            return info;
+        }
+        return sqlInfo.computeIfAbsent(sql, text -> new SqlInfo(firstLine(text), text, countParameters(text)));
+    }
+
+    private static String firstLine(String sql) {
+        String line = sql.strip().lines().findFirst().orElse("").strip();
+        return line.length() > MAX_NAME_LENGTH ? line.substring(0, MAX_NAME_LENGTH) : line;
+    }
+
+    private static int countParameters(String sql) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result instanceof Number number) {
+            return Math.max(number.longValue(), 0);
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * A query whose result set is still being read.
+     */
+    private static final class Execution {
+        private final long start = System.nanoTime();
+        private long rows;
+        private boolean finished;
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final SqlInfo info;
+        private Execution pending;
+
+        private StatementHandler(PreparedStatement statement, SqlInfo info) {
+            this.statement = statement;
+            this.info = info;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "executeQuery" -> {
+                    finishPending(null);
+                    Execution execution = new Execution();
+                    try {
+                        ResultSet resultSet = (ResultSet) call(statement, method, args);
+                        pending = execution;
+                        return (ResultSet) Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(),
+                                new Class<?>[]{ResultSet.class},
+                                (resultProxy, resultMethod, resultArgs) ->
+                                        invokeResultSet(proxy, resultSet, execution, resultMethod, resultArgs));
+                    } catch (Throwable e) {
+                        finish(execution, e);
+                        throw e;
+                    }
+                }
+                case "execute", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch" -> {
+                    finishPending(null);
+                    Execution execution = new Execution();
+                    try {
+                        Object result = call(statement, method, args);
+                        execution.rows = rowsOf(result);
+                        finish(execution, null);
+                        return result;
+                    } catch (Throwable e) {
+                        finish(execution, e);
+                        throw e;
+                    }
+                }
+                case "close" -> finishPending(null);
+                default -> {
+                }
+            }
+            return call(statement, method, args);
+        }
+
+        private Object invokeResultSet(Object statementProxy, ResultSet resultSet, Execution execution,
+                                       Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next" -> {
+                    try {
+                        boolean hasRow = resultSet.next();
+                        if (hasRow) {
+                            execution.rows++;
+                        } else {
+                            finish(execution, null);
+                        }
+                        return hasRow;
+                    } catch (Throwable e) {
+                        finish(execution, e);
+                        throw e;
+                    }
+                }
+                case "close" -> finish(execution, null);
+                case "getStatement" -> {
+                    return statementProxy;
+                }
+                default -> {
+                }
+            }
+            return call(resultSet, method, args);
+        }
+
+        private void finishPending(Throwable error) {
+            if (pending != null) {
+                finish(pending, error);
+                pending = null;
+            }
+        }
+
+        private void finish(Execution execution, Throwable error) {
+            if (execution.finished) {
+                return;
+            }
+            execution.finished = true;
+            record(new QueryEvent(info.name(), info.sql(), info.parameterCount(),
+                    System.nanoTime() - execution.start, execution.rows, error));
+        }
+    }
+}
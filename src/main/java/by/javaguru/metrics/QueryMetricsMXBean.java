@@ -0,0 +1,15 @@
+package by.javaguru.metrics;
+
+import java.util.Map;
+
+public interface QueryMetricsMXBean {
+    Map<String, OperationStats> getOperations();
+
+    OperationStats getConnectionWait();
+
+    long getSlowQueryThresholdMs();
+
+    void setSlowQueryThresholdMs(long thresholdMs);
+
+    void reset();
+}
@@ -0,0 +1,38 @@
+package by.javaguru.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs executions that take longer than the threshold. Bind values are never
+ * logged, only how many there were.
+ */
+public class SlowQueryLog implements MetricsSink {
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private volatile long thresholdNanos;
+
+    public SlowQueryLog(long thresholdMs) {
+        setThresholdMs(thresholdMs);
+    }
+
+    public long getThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public void setThresholdMs(long thresholdMs) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    }
+
+    @Override
+    public void onQuery(QueryEvent event) {
+        if (event.elapsedNanos() < thresholdNanos) {
+            return;
+        }
+        logger.warn("Slow query {} took {} ms: {} rows, {} bind parameters{}", event.operation(),
+                TimeUnit.NANOSECONDS.toMillis(event.elapsedNanos()), event.rows(), event.parameterCount(),
+                event.error() == null ? "" : ", failed with " + event.error());
+    }
+}
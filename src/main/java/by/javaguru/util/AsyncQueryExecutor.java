@@ -0,0 +1,100 @@
+package by.javaguru.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking DAO calls on virtual threads and hands back
+ * {@link CompletableFuture}s. At most {@code maxInFlight} calls touch JDBC at
+ * the same time, the rest park on a semaphore, which does not pin a carrier
+ * thread. The shared instance allows as many calls as the pool has
+ * connections, unless {@code db.async.maxInFlight} says otherwise.
+ * <p>
+ * Cancelling a future, or completing it any other way such as
+ * {@link CompletableFuture#orTimeout}, cancels the statement the call is
+ * running. A call that is still waiting for its turn never starts.
+ */
+public class AsyncQueryExecutor {
+    private static final String MAX_IN_FLIGHT_KEY = "db.async.maxInFlight";
+    private static final int WAITING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int ABANDONED = 3;
+    private static final AsyncQueryExecutor INSTANCE = new AsyncQueryExecutor(
+            PropertiesUtil.getInt(MAX_IN_FLIGHT_KEY, PoolConfig.fromProperties().getMaxSize()));
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("dao-async-", 0).factory());
+    private final Semaphore permits;
+    private final int maxInFlight;
+
+    public AsyncQueryExecutor(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight, true);
+    }
+
+    public static AsyncQueryExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        QueryCancellation cancellation = new QueryCancellation();
+        AtomicInteger state = new AtomicInteger(WAITING);
+
+        Future<?> task = executor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!state.compareAndSet(WAITING, RUNNING)) {
+                permits.release();
+                return;
+            }
+            T result = null;
+            Throwable error = null;
+            try {
+                result = cancellation.run(call);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                state.set(DONE);
+                permits.release();
+            }
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        });
+
+        future.whenComplete((result, error) -> {
+            int previous = state.getAndUpdate(current -> current == WAITING ? ABANDONED : current);
+            if (previous == WAITING) {
+                // only interrupt a call that has not started: interrupting a virtual thread
+                // blocked on a socket would close the physical connection
+                task.cancel(true);
+            } else if (previous == RUNNING) {
+                cancellation.cancel();
+            }
+        });
+        return future;
+    }
+}
@@ -1,5 +1,6 @@
 package by.javaguru.util;
 
+import by.javaguru.metrics.QueryMetrics;
 import lombok.experimental.UtilityClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -7,6 +8,8 @@ import org.slf4j.LoggerFactory;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
 
 @UtilityClass
 public class ConnectionManager {
@@ -14,36 +17,67 @@ public class ConnectionManager {
     private static final String URL_KEY = "db.url";
     private static final String USERNAME_KEY = "db.username";
     private static final String PASSWORD_KEY = "db.password";
-    private static volatile Connection connection;
+    private static final String SCHEMA_KEY = "db.schema";
+    private static final Map<String, String> DRIVER_PROPERTY_KEYS = Map.of(
+            "db.prepareThreshold", "prepareThreshold",
+            "db.reWriteBatchedInserts", "reWriteBatchedInserts");
+    private static final String DEFAULT_SCHEMA = "flights";
+    private static volatile ConnectionPool pool;
 
+    /**
+     * Borrows a connection from the pool. Closing the returned connection
+     * gives it back to the pool. Inside {@link TransactionTemplate#execute}
+     * the connection bound to the transaction is returned instead, and closing
+     * it does nothing.
+     */
     public static Connection open() {
+        Connection bound = TransactionTemplate.currentConnection();
+        if (bound != null) {
+            return bound;
+        }
         try {
-            if (connection == null) {
-                logger.info("Trying to open new connection.");
-                synchronized (ConnectionManager.class) {
-                    if (connection == null) {
-                        connection = DriverManager.getConnection(
-                                PropertiesUtil.get(URL_KEY),
-                                PropertiesUtil.get(USERNAME_KEY),
-                                PropertiesUtil.get(PASSWORD_KEY));
-                        connection.setSchema("flights");
-                        logger.info("Connection to database was opened. Schema: {}", connection.getSchema());
-                    }
-                }
-            }
-            return connection;
+            return getPool().borrow();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    public static ConnectionPool getPool() {
+        if (pool == null) {
+            synchronized (ConnectionManager.class) {
+                if (pool == null) {
+                    logger.info("Trying to start connection pool.");
+                    pool = new ConnectionPool(PoolConfig.fromProperties(), ConnectionManager::openPhysical,
+                            QueryMetrics.getInstance());
+                }
+            }
+        }
+        return pool;
+    }
+
     public static void close() {
-        try {
-            logger.info("Trying to close connection.");
-            connection.close();
-            logger.info("Connection closed");
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        synchronized (ConnectionManager.class) {
+            if (pool != null) {
+                logger.info("Trying to close connection pool.");
+                pool.close();
+                pool = null;
+            }
         }
     }
+
+    private static Connection openPhysical() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", PropertiesUtil.get(USERNAME_KEY));
+        properties.setProperty("password", PropertiesUtil.get(PASSWORD_KEY));
+        DRIVER_PROPERTY_KEYS.forEach((key, driverProperty) -> {
+            String value = PropertiesUtil.get(key);
+            if (value != null) {
+                properties.setProperty(driverProperty, value);
+            }
+        });
+
+        Connection connection = DriverManager.getConnection(PropertiesUtil.get(URL_KEY), properties);
+        connection.setSchema(PropertiesUtil.get(SCHEMA_KEY, DEFAULT_SCHEMA));
+        return connection;
+    }
 }
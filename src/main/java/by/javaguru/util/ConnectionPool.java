@@ -0,0 +1,332 @@
+package by.javaguru.util;
+
+import by.javaguru.metrics.QueryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of physical connections. Borrowed connections are proxies:
+ * {@link Connection#close()} returns the physical connection to the pool
+ * instead of closing it.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final PoolConfig config;
+    private final ConnectionFactory factory;
+    private final QueryMetrics metrics;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger total = new AtomicInteger();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    public ConnectionPool(PoolConfig config, ConnectionFactory factory) {
+        this(config, factory, null);
+    }
+
+    /**
+     * @param metrics receives connection wait times and instruments prepared
+     *                statements, {@code null} disables instrumentation
+     */
+    public ConnectionPool(PoolConfig config, ConnectionFactory factory, QueryMetrics metrics) {
+        if (config.getMinSize() < 0 || config.getMaxSize() < 1 || config.getMinSize() > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min=%d, max=%d"
+                    .formatted(config.getMinSize(), config.getMaxSize()));
+        }
+        this.config = config;
+        this.factory = factory;
+        this.metrics = metrics;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        fillToMinimum();
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, config.getHousekeepingPeriodMs(),
+                config.getHousekeepingPeriodMs(), TimeUnit.MILLISECONDS);
+        logger.info("Connection pool started: min={}, max={}", config.getMinSize(), config.getMaxSize());
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getBorrowTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                if (metrics != null) {
+                    metrics.recordConnectionWait(System.nanoTime() - start, true);
+                }
+                throw new SQLTimeoutException("No connection available within %d ms (active=%d, max=%d)"
+                        .formatted(config.getBorrowTimeoutMs(), getActiveCount(), config.getMaxSize()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        Connection connection;
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = create();
+            }
+            connection = pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        if (metrics != null) {
+            metrics.recordConnectionWait(System.nanoTime() - start, false);
+        }
+        return connection;
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return config.getMaxSize() - permits.availablePermits();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+        logger.info("Connection pool closed");
+    }
+
+    private void release(PooledConnection pooled) {
+        try {
+            if (closed || isExpired(pooled) || pooled.physical.isClosed()) {
+                destroy(pooled);
+                return;
+            }
+            pooled.reset();
+            pooled.lastUsedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            logger.warn("Connection could not be reset and was discarded", e);
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (isExpired(pooled)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooled.lastUsedAt < config.getValidationIntervalMs()) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(config.getValidationTimeoutSec());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled) {
+        return System.currentTimeMillis() - pooled.createdAt >= config.getMaxLifetimeMs();
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical = factory.create();
+        PooledConnection pooled;
+        try {
+            pooled = new PooledConnection(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        logger.debug("Opened physical connection, total={}", total.get());
+        return pooled;
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        if (pooled.statementCache != null) {
+            pooled.statementCache.closeAll();
+        }
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.warn("Failed to close physical connection", e);
+        }
+        logger.debug("Closed physical connection, total={}", total.get());
+    }
+
+    private void houseKeep() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : idle) {
+            boolean idleTooLong = now - pooled.lastUsedAt >= config.getIdleTimeoutMs()
+                                  && total.get() > config.getMinSize();
+            if ((idleTooLong || isExpired(pooled)) && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        fillToMinimum();
+    }
+
+    private void fillToMinimum() {
+        try {
+            while (!closed && total.get() < config.getMinSize()) {
+                idle.offerLast(create());
+            }
+        } catch (SQLException e) {
+            logger.warn("Failed to open connection while filling the pool to its minimum size", e);
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile long lastUsedAt = createdAt;
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+        private final int defaultIsolation;
+        private final StatementCache statementCache;
+
+        private PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.statementCache = config.getStatementCacheSize() > 0
+                    ? new StatementCache(physical, config.getStatementCacheSize(),
+                    statementCacheHits, statementCacheMisses)
+                    : null;
+        }
+
+        private Connection lease() {
+            AtomicBoolean returned = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> invoke(proxy, returned, method, args));
+        }
+
+        private Object invoke(Object proxy, AtomicBoolean returned, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "close" -> {
+                    if (returned.compareAndSet(false, true)) {
+                        release(this);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned.get() || physical.isClosed();
+                }
+                case "setReadOnly" -> readOnlyChanged = true;
+                case "setTransactionIsolation" -> isolationChanged = true;
+                default -> {
+                }
+            }
+
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement")) {
+                PreparedStatement statement = prepare(method, args);
+                if (metrics != null) {
+                    statement = metrics.instrument(statement, (String) args[0]);
+                }
+                QueryCancellation cancellation = QueryCancellation.current();
+                return cancellation == null ? statement : cancellation.track(statement);
+            }
+            return invokePhysical(method, args);
+        }
+
+        private PreparedStatement prepare(Method method, Object[] args) throws Throwable {
+            if (statementCache != null) {
+                if (args.length == 1) {
+                    return statementCache.prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (args.length == 2 && args[1] instanceof Integer autoGeneratedKeys) {
+                    return statementCache.prepare((String) args[0], autoGeneratedKeys);
+                }
+            }
+            return (PreparedStatement) invokePhysical(method, args);
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void reset() throws SQLException {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (readOnlyChanged) {
+                physical.setReadOnly(false);
+                readOnlyChanged = false;
+            }
+            if (isolationChanged) {
+                physical.setTransactionIsolation(defaultIsolation);
+                isolationChanged = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package by.javaguru.util;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class PoolConfig {
+    private static final String MIN_SIZE_KEY = "db.pool.minSize";
+    private static final String MAX_SIZE_KEY = "db.pool.maxSize";
+    private static final String BORROW_TIMEOUT_KEY = "db.pool.borrowTimeoutMs";
+    private static final String VALIDATION_TIMEOUT_KEY = "db.pool.validationTimeoutSec";
+    private static final String VALIDATION_INTERVAL_KEY = "db.pool.validationIntervalMs";
+    private static final String IDLE_TIMEOUT_KEY = "db.pool.idleTimeoutMs";
+    private static final String MAX_LIFETIME_KEY = "db.pool.maxLifetimeMs";
+    private static final String HOUSEKEEPING_PERIOD_KEY = "db.pool.housekeepingPeriodMs";
+    private static final String STATEMENT_CACHE_SIZE_KEY = "db.pool.statementCacheSize";
+
+    @Builder.Default
+    private final int minSize = 2;
+    @Builder.Default
+    private final int maxSize = 10;
+    @Builder.Default
+    private final long borrowTimeoutMs = 30_000;
+    @Builder.Default
+    private final int validationTimeoutSec = 5;
+    /**
+     * Connections returned to the pool more recently than this are handed out
+     * without an extra validation round trip.
+     */
+    @Builder.Default
+    private final long validationIntervalMs = 500;
+    @Builder.Default
+    private final long idleTimeoutMs = 600_000;
+    @Builder.Default
+    private final long maxLifetimeMs = 1_800_000;
+    @Builder.Default
+    private final long housekeepingPeriodMs = 30_000;
+    /**
+     * Prepared statements kept open per connection, 0 disables the cache.
+     */
+    @Builder.Default
+    private final int statementCacheSize = 64;
+
+    public static PoolConfig fromProperties() {
+        PoolConfig defaults = PoolConfig.builder().build();
+        return PoolConfig.builder()
+                .minSize(PropertiesUtil.getInt(MIN_SIZE_KEY, defaults.minSize))
+                .maxSize(PropertiesUtil.getInt(MAX_SIZE_KEY, defaults.maxSize))
+                .borrowTimeoutMs(PropertiesUtil.getLong(BORROW_TIMEOUT_KEY, defaults.borrowTimeoutMs))
+                .validationTimeoutSec(PropertiesUtil.getInt(VALIDATION_TIMEOUT_KEY, defaults.validationTimeoutSec))
+                .validationIntervalMs(PropertiesUtil.getLong(VALIDATION_INTERVAL_KEY, defaults.validationIntervalMs))
+                .idleTimeoutMs(PropertiesUtil.getLong(IDLE_TIMEOUT_KEY, defaults.idleTimeoutMs))
+                .maxLifetimeMs(PropertiesUtil.getLong(MAX_LIFETIME_KEY, defaults.maxLifetimeMs))
+                .housekeepingPeriodMs(PropertiesUtil.getLong(HOUSEKEEPING_PERIOD_KEY, defaults.housekeepingPeriodMs))
+                .statementCacheSize(PropertiesUtil.getInt(STATEMENT_CACHE_SIZE_KEY, defaults.statementCacheSize))
+                .build();
+    }
+}
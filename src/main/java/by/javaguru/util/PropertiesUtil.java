@@ -6,6 +6,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+/**
+ * Settings from {@code application.properties}. A JVM system property of the
+ * same name, such as {@code -Ddb.schema=flights_archive}, takes precedence.
+ */
 @UtilityClass
 public class PropertiesUtil {
     private static final Properties PROPERTIES = new Properties();
@@ -20,6 +24,31 @@ public class PropertiesUtil {
     }
 
     public static String get(String key) {
-        return PROPERTIES.getProperty(key);
+        return System.getProperty(key, PROPERTIES.getProperty(key));
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
     }
 }
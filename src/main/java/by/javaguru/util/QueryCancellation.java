@@ -0,0 +1,86 @@
+package by.javaguru.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statements opened by one asynchronous task. While the task runs, the pool
+ * registers every statement prepared on its thread here, so that
+ * {@link #cancel()} can send {@link java.sql.Statement#cancel()} to the query
+ * in progress. Statements prepared after cancellation fail right away.
+ */
+class QueryCancellation {
+    private static final Logger logger = LoggerFactory.getLogger(QueryCancellation.class);
+    private static final String QUERY_CANCELED_STATE = "57014";
+    private static final ThreadLocal<QueryCancellation> CURRENT = new ThreadLocal<>();
+
+    private final Set<PreparedStatement> statements = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    static QueryCancellation current() {
+        return CURRENT.get();
+    }
+
+    <T> T run(Callable<T> task) throws Exception {
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        for (PreparedStatement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                logger.warn("Failed to cancel statement", e);
+            }
+        }
+    }
+
+    PreparedStatement track(PreparedStatement statement) throws SQLException {
+        checkNotCancelled(statement);
+        statements.add(statement);
+
+        return (PreparedStatement) Proxy.newProxyInstance(QueryCancellation.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "close" -> statements.remove(statement);
+                        case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch",
+                             "executeLargeBatch" -> checkNotCancelled(statement);
+                        default -> {
+                        }
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private void checkNotCancelled(PreparedStatement statement) throws SQLException {
+        if (cancelled) {
+            statements.remove(statement);
+            statement.close();
+            throw new SQLException("Query was cancelled", QUERY_CANCELED_STATE);
+        }
+    }
+}
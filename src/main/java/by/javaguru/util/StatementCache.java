@@ -0,0 +1,165 @@
+package by.javaguru.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements for one physical connection, keyed by SQL
+ * text and generated-keys mode. Closing a cached statement only closes its
+ * result sets and clears parameters, so pgJDBC keeps counting executions
+ * towards {@code prepareThreshold} and switches to a server-prepared plan.
+ * <p>
+ * Not thread-safe: a physical connection is used by one borrower at a time.
+ */
+class StatementCache {
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    private final Connection physical;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final Map<Key, CachedStatement> statements;
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses) {
+        this.physical = physical;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        CachedStatement cached = statements.get(key);
+
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        misses.increment();
+        PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // the same SQL is already open on this connection, hand out a plain statement
+            return statement;
+        }
+
+        cached = new CachedStatement(statement);
+        cached.inUse = true;
+        statements.put(key, cached);
+        return cached.proxy;
+    }
+
+    void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            cached.closePhysical();
+        }
+        statements.clear();
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private final List<ResultSet> openResults = new ArrayList<>();
+        private boolean inUse;
+        private boolean evicted;
+        private boolean settingsChanged;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> invoke(method, args));
+        }
+
+        private Object invoke(Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    release();
+                    return null;
+                }
+                case "isClosed" -> {
+                    return !inUse;
+                }
+                case "setFetchSize", "setMaxRows", "setQueryTimeout", "setFetchDirection" -> settingsChanged = true;
+                default -> {
+                }
+            }
+
+            Object result;
+            try {
+                result = method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet resultSet) {
+                openResults.add(resultSet);
+            }
+            return result;
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+
+            if (evicted) {
+                closePhysical();
+                return;
+            }
+            for (ResultSet resultSet : openResults) {
+                resultSet.close();
+            }
+            openResults.clear();
+            statement.clearParameters();
+            statement.clearBatch();
+            if (settingsChanged) {
+                statement.setFetchSize(0);
+                statement.setMaxRows(0);
+                statement.setQueryTimeout(0);
+                statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+                settingsChanged = false;
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closePhysical();
+            }
+        }
+
+        private void closePhysical() {
+            openResults.clear();
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close cached statement", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package by.javaguru.util;
+
+import by.javaguru.exception.DaoException;
+import lombok.Builder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a unit of work on one pooled connection bound to the current thread.
+ * While the callback runs, {@link ConnectionManager#open()} on that thread
+ * returns the bound connection, so DAO calls made inside it join the
+ * transaction. Closing, committing or switching autocommit on such a
+ * connection has no effect; rolling it back marks the whole transaction
+ * rollback-only. Nested templates join the outer transaction, failing ones
+ * mark it rollback-only as well.
+ * <p>
+ * A read-only template with the default isolation runs its statements in
+ * autocommit mode: every query sees its own snapshot, and no
+ * {@code BEGIN}/{@code COMMIT} round trips are made. Ask for
+ * {@link Isolation#REPEATABLE_READ} to read a consistent snapshot.
+ */
+@Getter
+@Builder
+public class TransactionTemplate {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionTemplate.class);
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    public static final TransactionTemplate READ_WRITE = builder().build();
+    public static final TransactionTemplate READ_ONLY = builder().readOnly(true).build();
+
+    @Builder.Default
+    private final Isolation isolation = Isolation.DEFAULT;
+    private final boolean readOnly;
+
+    @FunctionalInterface
+    public interface TransactionCallback<T> {
+        T doInTransaction(Connection connection) throws SQLException;
+    }
+
+    public enum Isolation {
+        DEFAULT(-1),
+        READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+        REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+        SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+        private final int level;
+
+        Isolation(int level) {
+            this.level = level;
+        }
+    }
+
+    private static final class Transaction {
+        private final Connection connection;
+        private final Connection participant;
+        private final TransactionTemplate template;
+        private final List<Runnable> completionActions = new ArrayList<>();
+        private final List<Runnable> commitActions = new ArrayList<>();
+        private boolean rollbackOnly;
+
+        private Transaction(Connection connection, TransactionTemplate template) {
+            this.connection = connection;
+            this.template = template;
+            this.participant = participate(this);
+        }
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Runs the action once the current transaction has committed or rolled
+     * back, or right away outside of a transaction. Used by in-memory state
+     * that must not see changes which may still be rolled back.
+     */
+    public static void afterCompletion(Runnable action) {
+        Transaction transaction = CURRENT.get();
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.completionActions.add(action);
+        }
+    }
+
+    /**
+     * Runs the action once the current transaction has committed, or right
+     * away outside of a transaction. Used by in-memory state that cannot undo
+     * a change, so it must never see one that gets rolled back.
+     */
+    public static void afterCommit(Runnable action) {
+        Transaction transaction = CURRENT.get();
+        if (transaction == null) {
+            action.run();
+        } else {
+            transaction.commitActions.add(action);
+        }
+    }
+
+    /**
+     * Returns the connection bound to the current thread wrapped so that
+     * callers cannot end the transaction, or {@code null} outside of one.
+     */
+    static Connection currentConnection() {
+        Transaction transaction = CURRENT.get();
+        return transaction == null ? null : transaction.participant;
+    }
+
+    public <T> T execute(TransactionCallback<T> callback) {
+        Transaction current = CURRENT.get();
+        if (current != null) {
+            return join(current, callback);
+        }
+
+        try (Connection connection = ConnectionManager.getPool().borrow()) {
+            begin(connection);
+            Transaction transaction = new Transaction(connection, this);
+            CURRENT.set(transaction);
+            boolean committed = false;
+            try {
+                T result = callback.doInTransaction(transaction.participant);
+                complete(transaction);
+                committed = true;
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                rollback(connection, e);
+                throw e;
+            } finally {
+                CURRENT.remove();
+                transaction.completionActions.forEach(TransactionTemplate::runQuietly);
+                if (committed) {
+                    transaction.commitActions.forEach(TransactionTemplate::runQuietly);
+                }
+            }
+        } catch (SQLException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private <T> T join(Transaction current, TransactionCallback<T> callback) {
+        if (current.template.readOnly && !readOnly) {
+            throw new IllegalStateException("Cannot join a read-only transaction for writing");
+        }
+        if (isolation != Isolation.DEFAULT && isolation != current.template.isolation) {
+            throw new IllegalStateException("Cannot join a %s transaction with %s isolation"
+                    .formatted(current.template.isolation, isolation));
+        }
+        try {
+            return callback.doInTransaction(current.participant);
+        } catch (SQLException e) {
+            current.rollbackOnly = true;
+            throw new DaoException(e);
+        } catch (RuntimeException e) {
+            current.rollbackOnly = true;
+            throw e;
+        }
+    }
+
+    private void begin(Connection connection) throws SQLException {
+        if (readOnly) {
+            connection.setReadOnly(true);
+        }
+        if (isolation != Isolation.DEFAULT) {
+            connection.setTransactionIsolation(isolation.level);
+        }
+        if (!readOnly || isolation != Isolation.DEFAULT) {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    private static void complete(Transaction transaction) throws SQLException {
+        Connection connection = transaction.connection;
+        if (connection.getAutoCommit()) {
+            return;
+        }
+        if (transaction.rollbackOnly) {
+            connection.rollback();
+            throw new IllegalStateException("Transaction was rolled back because it was marked rollback-only");
+        }
+        connection.commit();
+    }
+
+    private static void rollback(Connection connection, Exception cause) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+            logger.warn("Failed to roll back transaction", e);
+        }
+    }
+
+    private static void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            logger.warn("Transaction completion action failed", e);
+        }
+    }
+
+    private static Connection participate(Transaction transaction) {
+        return (Connection) Proxy.newProxyInstance(TransactionTemplate.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "close", "commit" -> {
+                            return null;
+                        }
+                        case "setAutoCommit" -> {
+                            // a read-only scope runs in autocommit mode until someone needs a transaction
+                            if ((boolean) args[0]) {
+                                return null;
+                            }
+                        }
+                        case "rollback" -> {
+                            if (args == null) {
+                                transaction.rollbackOnly = true;
+                                return null;
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                    try {
+                        return method.invoke(transaction.connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
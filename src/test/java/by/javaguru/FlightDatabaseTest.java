@@ -2,34 +2,82 @@ package by.javaguru;
 
 import by.javaguru.dao.AircraftDao;
 import by.javaguru.dao.AirportDao;
+import by.javaguru.dao.AsyncDao;
+import by.javaguru.dao.BookingDao;
+import by.javaguru.dao.CachingDao;
+import by.javaguru.dao.CachingUpsertDao;
+import by.javaguru.dao.CopyLoader;
 import by.javaguru.dao.FlightDao;
+import by.javaguru.dao.ItineraryDao;
+import by.javaguru.dao.SeatAvailability;
 import by.javaguru.dao.SeatDao;
+import by.javaguru.dao.TicketAnalytics;
 import by.javaguru.dao.TicketDao;
+import by.javaguru.dto.CacheStats;
+import by.javaguru.dto.CopyResult;
 import by.javaguru.dto.FlightUpdateInfo;
+import by.javaguru.dto.GenerationReport;
+import by.javaguru.dto.Itinerary;
+import by.javaguru.dto.Page;
+import by.javaguru.dto.TicketFilter;
 import by.javaguru.dto.TicketUpdateInfo;
 import by.javaguru.entity.Aircraft;
 import by.javaguru.entity.Airport;
 import by.javaguru.entity.Flight;
 import by.javaguru.entity.Seat;
 import by.javaguru.entity.Ticket;
+import by.javaguru.generator.DataGenerator;
+import by.javaguru.generator.GeneratorConfig;
+import by.javaguru.metrics.MetricsSink;
+import by.javaguru.metrics.OperationStats;
+import by.javaguru.metrics.QueryEvent;
+import by.javaguru.metrics.QueryMetrics;
 import by.javaguru.util.ConnectionManager;
 import by.javaguru.util.SQLScriptRunner;
+import by.javaguru.util.TransactionTemplate;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class FlightDatabaseTest {
     private static TicketDao ticketDao;
@@ -37,7 +85,6 @@ class FlightDatabaseTest {
     private static AirportDao airportDao;
     private static SeatDao seatDao;
     private static AircraftDao aircraftDao;
-    private static final Connection connection = ConnectionManager.open();
 
     @BeforeEach
     public void init() throws Exception {
@@ -48,14 +95,17 @@ class FlightDatabaseTest {
         aircraftDao = AircraftDao.getInstance();
 
         Path path = Path.of("src", "test", "resources", "create-database.sql").toAbsolutePath();
-        SQLScriptRunner.execute(path.toString(), connection);
-        connection.setSchema("flights_test");
+        try (Connection connection = ConnectionManager.open()) {
+            SQLScriptRunner.execute(path.toString(), connection);
+        }
     }
 
     @AfterEach
     public void dropDatabase() throws Exception {
         Path path = Path.of("src", "test", "resources", "drop-database.sql").toAbsolutePath();
-        SQLScriptRunner.execute(path.toString(), connection);
+        try (Connection connection = ConnectionManager.open()) {
+            SQLScriptRunner.execute(path.toString(), connection);
+        }
     }
 
     @AfterAll
@@ -63,6 +113,20 @@ class FlightDatabaseTest {
         ConnectionManager.close();
     }
 
+    private static Ticket generateTicket() {
+        return ticket("123567", "Иван Иванов", 8L, "B1", 1200);
+    }
+
+    private static Ticket ticket(String passportNo, String passengerName, Long flightId, String seatNo, int cost) {
+        return Ticket.builder()
+                .passportNo(passportNo)
+                .passengerName(passengerName)
+                .flightId(flightId)
+                .seatNo(seatNo)
+                .cost(cost)
+                .build();
+    }
+
     @Nested
     class FlightDaoTest {
         @Test
@@ -100,6 +164,77 @@ class FlightDatabaseTest {
             assertEquals(9, tickets.size());
         }
 
+        @Test
+        public void findPage() {
+            Page<Flight> first = flightDao.findPage(null, 5);
+            Page<Flight> second = flightDao.findPage(first.getNextToken(), 5);
+
+            assertEquals(5, first.getItems().size());
+            assertEquals(4, second.getItems().size());
+            assertEquals(6L, second.getItems().get(0).getId());
+            assertFalse(second.hasNext());
+        }
+
+        @Test
+        public void search() {
+            LocalDateTime from = LocalDateTime.of(2020, 6, 14, 14, 30);
+            LocalDateTime to = LocalDateTime.of(2020, 12, 18, 3, 35);
+
+            List<Flight> flights = flightDao.search("MNK", "LDN", from, to, null, 10);
+            assertEquals(List.of(1L, 3L), flights.stream().map(Flight::getId).toList());
+            assertEquals(List.of(1L), flightDao.search("MNK", "LDN", from, to, null, 1).stream()
+                    .map(Flight::getId).toList());
+            assertTrue(flightDao.search("MNK", "LDN", from, to, "DEPARTED", 10).isEmpty());
+            assertEquals(List.of(4L), flightDao.search("LDN", "MNK", from, to.plusDays(1), "DEPARTED", 10).stream()
+                    .map(Flight::getId).toList());
+            assertThrows(IllegalArgumentException.class, () -> flightDao.search("MNK", "LDN", from, to, null, 0));
+        }
+
+        @Test
+        public void searchUsesRouteIndex() {
+            List<QueryEvent> events = new CopyOnWriteArrayList<>();
+            MetricsSink sink = events::add;
+            QueryMetrics.getInstance().addSink(sink);
+            try {
+                flightDao.search("MNK", "LDN", LocalDateTime.of(2020, 1, 1, 0, 0), LocalDateTime.of(2021, 1, 1, 0, 0),
+                        "ARRIVED", 10);
+            } finally {
+                QueryMetrics.getInstance().removeSink(sink);
+            }
+            String sql = events.stream()
+                    .filter(event -> event.operation().equals("FlightDao.SEARCH_SQL"))
+                    .findFirst()
+                    .orElseThrow()
+                    .sql();
+
+            // nine analyzed flights are cheaper to read sequentially, so make the planner prove the index fits;
+            // SET LOCAL needs a transaction block, which a default read-only template does not open
+            String plan = TransactionTemplate.READ_WRITE.execute(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ANALYZE flight");
+                    statement.execute("SET LOCAL enable_seqscan = off");
+                }
+                try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                    explain.setString(1, "MNK");
+                    explain.setString(2, "LDN");
+                    explain.setTimestamp(3, Timestamp.valueOf(LocalDateTime.of(2020, 1, 1, 0, 0)));
+                    explain.setTimestamp(4, Timestamp.valueOf(LocalDateTime.of(2021, 1, 1, 0, 0)));
+                    explain.setString(5, "ARRIVED");
+                    explain.setString(6, "ARRIVED");
+                    explain.setInt(7, 10);
+                    ResultSet result = explain.executeQuery();
+                    StringBuilder lines = new StringBuilder();
+                    while (result.next()) {
+                        lines.append(result.getString(1)).append('\n');
+                    }
+                    return lines.toString();
+                }
+            });
+
+            assertTrue(plan.contains("Index Scan using flight_route_departure_idx"), plan);
+            assertTrue(plan.contains("departure_date >="), plan);
+        }
+
         @Test
         public void updateDataByFlightId() {
             int newCost = 1200;
@@ -174,6 +309,95 @@ class FlightDatabaseTest {
             assertEquals(55, tickets.size());
         }
 
+        @Test
+        public void saveAll() {
+            List<Ticket> tickets = List.of(
+                    generateTicket(),
+                    ticket("765321", "Петр Петров", 8L, "C1", 900));
+
+            List<Ticket> saved = ticketDao.saveAll(tickets);
+
+            assertEquals(2, saved.size());
+            for (Ticket ticket : saved) {
+                assertNotNull(ticket.getId());
+                assertEquals(ticket, ticketDao.findById(ticket.getId()).get());
+            }
+            assertEquals(57, ticketDao.findAll().size());
+        }
+
+        @Test
+        public void streamAll() {
+            try (Stream<Ticket> tickets = ticketDao.streamAll()) {
+                assertEquals(55, tickets.count());
+            }
+            assertEquals(0, ConnectionManager.getPool().getActiveCount());
+        }
+
+        @Test
+        public void closingPartiallyReadStreamReleasesConnection() {
+            try (Stream<Ticket> tickets = ticketDao.streamAll()) {
+                assertEquals(3, tickets.limit(3).count());
+                assertEquals(1, ConnectionManager.getPool().getActiveCount());
+            }
+            assertEquals(0, ConnectionManager.getPool().getActiveCount());
+        }
+
+        @Test
+        public void findPageWalksAllTicketsInIdOrder() {
+            List<Long> ids = new ArrayList<>();
+            String token = null;
+            do {
+                Page<Ticket> page = ticketDao.findPage(token, 10);
+                page.getItems().forEach(ticket -> ids.add(ticket.getId()));
+                token = page.getNextToken();
+            } while (token != null);
+
+            assertEquals(55, ids.size());
+            assertEquals(1L, ids.get(0));
+            assertEquals(55L, ids.get(54));
+        }
+
+        @Test
+        public void findPageByFlightAndSeat() {
+            Page<Ticket> first = ticketDao.findPageByFlightAndSeat(null, 6);
+            assertTrue(first.getItems().stream().allMatch(ticket -> ticket.getFlightId() == 1L));
+
+            Page<Ticket> second = ticketDao.findPageByFlightAndSeat(first.getNextToken(), 5);
+            assertTrue(second.getItems().stream().allMatch(ticket -> ticket.getFlightId() == 2L));
+            assertEquals("A1", second.getItems().get(0).getSeatNo());
+        }
+
+        @Test
+        public void pageTokenOfAnotherListingIsRejected() {
+            String token = ticketDao.findPageByFlightAndSeat(null, 1).getNextToken();
+            assertThrows(IllegalArgumentException.class, () -> ticketDao.findPage(token, 1));
+        }
+
+        @Test
+        public void findAllById() {
+            Map<Long, Ticket> tickets = ticketDao.findAllById(List.of(3L, 7L, 1000L));
+
+            assertEquals(2, tickets.size());
+            assertEquals("Светлана Светикова", tickets.get(3L).getPassengerName());
+            assertEquals("Екатерина Петренко", tickets.get(7L).getPassengerName());
+        }
+
+        @Test
+        public void updateTicketsBindsFilterValuesAsParameters() {
+            Ticket ticket = generateTicket();
+            ticket.setPassengerName("Шарль д'Артаньян");
+            ticketDao.save(ticket);
+
+            TicketFilter filter = TicketFilter.builder()
+                    .passengerName("Шарль д'Артаньян")
+                    .flightId(8L)
+                    .build();
+            int updated = ticketDao.updateTickets(filter, new TicketUpdateInfo(999));
+
+            assertEquals(1, updated);
+            assertEquals(999, ticketDao.findById(ticket.getId()).get().getCost());
+        }
+
         @Test
         public void findMostCommonNames() {
             List<String> actual = ticketDao.findMostCommonNames(3);
@@ -189,16 +413,6 @@ class FlightDatabaseTest {
             assertEquals(3, tickets.get("Светлана Светикова"));
             assertEquals(2, tickets.get("Иван Старовойтов"));
         }
-
-        private static Ticket generateTicket() {
-            return Ticket.builder()
-                    .passportNo("123567")
-                    .passengerName("Иван Иванов")
-                    .flightId(8L)
-                    .seatNo("B1")
-                    .cost(1200)
-                    .build();
-        }
     }
 
     @Nested
@@ -245,6 +459,14 @@ class FlightDatabaseTest {
             assertEquals(4, airports.size());
         }
 
+        @Test
+        public void findAllById() {
+            Map<String, Airport> airports = airportDao.findAllById(List.of("MNK", "LDN"));
+
+            assertEquals(2, airports.size());
+            assertEquals("Лондон", airports.get("LDN").getCity());
+        }
+
         private static Airport generateAirport() {
             return Airport.builder()
                     .code("OMS")
@@ -270,6 +492,28 @@ class FlightDatabaseTest {
             assertEquals(32, seats.size());
         }
 
+        @Test
+        public void saveAll() {
+            List<Seat> seats = List.of(generateSeat(), Seat.builder().aircraftId(2).seatNo("C5").build());
+
+            seatDao.saveAll(seats);
+
+            assertEquals(34, seatDao.findAll().size());
+        }
+
+        @Test
+        public void findAllById() {
+            Seat a1 = Seat.builder().aircraftId(1).seatNo("A1").build();
+            Seat d2 = Seat.builder().aircraftId(3).seatNo("D2").build();
+            Seat missing = Seat.builder().aircraftId(3).seatNo("Z9").build();
+
+            Map<Seat, Seat> seats = seatDao.findAllById(List.of(a1, d2, missing));
+
+            assertEquals(2, seats.size());
+            assertEquals(a1, seats.get(a1));
+            assertEquals(d2, seats.get(d2));
+        }
+
         @Test
         public void updateSeat() {
             Seat updatingSeat = seatDao.save(generateSeat());
@@ -316,6 +560,15 @@ class FlightDatabaseTest {
             assertEquals(4, seats.size());
         }
 
+        @Test
+        public void saveAll() {
+            List<Aircraft> aircrafts = aircraftDao.saveAll(List.of(generateAircraft(), generateAircraft()));
+
+            assertNotNull(aircrafts.get(0).getId());
+            assertEquals(aircrafts.get(0).getId() + 1, aircrafts.get(1).getId());
+            assertEquals(6, aircraftDao.findAll().size());
+        }
+
         @Test
         public void updateAircraft() {
             Aircraft aircraft = aircraftDao.save(generateAircraft());
@@ -340,4 +593,895 @@ class FlightDatabaseTest {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    class CopyLoaderTest {
+        @Test
+        public void copyTicketsInTextFormat() {
+            copyTickets(CopyLoader.Format.TEXT);
+        }
+
+        @Test
+        public void copyTicketsInBinaryFormat() {
+            copyTickets(CopyLoader.Format.BINARY);
+        }
+
+        @Test
+        public void copyFlightsInBinaryFormat() {
+            LocalDateTime departure = LocalDateTime.of(2021, 3, 4, 5, 6, 7);
+            Flight flight = Flight.builder()
+                    .flightNo("MP3000")
+                    .departureDate(departure)
+                    .departureAirportCode("MNK")
+                    .arrivalDate(departure.plusHours(2))
+                    .arrivalAirportCode("BSL")
+                    .aircraftId(2L)
+                    .status("SCHEDULED")
+                    .build();
+
+            CopyResult result = CopyLoader.flights().load(List.of(flight), CopyLoader.Format.BINARY);
+
+            assertEquals(1, result.getRows());
+            Flight copied = flightDao.findById(10L).get();
+            assertEquals(departure, copied.getDepartureDate());
+            assertEquals(departure.plusHours(2), copied.getArrivalDate());
+            assertEquals("BSL", copied.getArrivalAirportCode());
+        }
+
+        private void copyTickets(CopyLoader.Format format) {
+            List<Ticket> tickets = List.of(
+                    ticket("TAB\tX", "Иван Иванов", 8L, "B1", 100),
+                    ticket("777777", "Петр Петров", 8L, "C1", 200));
+
+            CopyResult result = CopyLoader.tickets().load(tickets, format);
+
+            assertEquals(2, result.getRows());
+            List<Ticket> copied = ticketDao.findTicketsByFlightId(8L);
+            assertEquals(8, copied.size());
+            assertTrue(copied.stream().anyMatch(ticket -> ticket.getPassportNo().equals("TAB\tX")
+                                                          && ticket.getPassengerName().equals("Иван Иванов")));
+        }
+    }
+
+    @Nested
+    class CachingDaoTest {
+        private CachingDao<String, Airport> airports;
+
+        @BeforeEach
+        public void createCache() {
+            airports = new CachingDao<>("airport", airportDao, Airport::getCode,
+                    airport -> airport.toBuilder().build(), 2, 60_000);
+        }
+
+        @Test
+        public void secondLookupIsServedFromCache() {
+            Airport first = airports.findById("MNK").get();
+            Airport second = airports.findById("MNK").get();
+
+            assertEquals(first, second);
+            CacheStats stats = airports.getStats();
+            assertEquals(1, stats.getHits());
+            assertEquals(1, stats.getMisses());
+            assertEquals(1, stats.getLoads());
+        }
+
+        @Test
+        public void updateInvalidatesEntry() {
+            Airport airport = airports.findById("MNK").get();
+            airport.setCity("Гродно");
+            airports.update("MNK", airport);
+
+            assertEquals("Гродно", airports.findById("MNK").get().getCity());
+            assertEquals(0, airports.getStats().getHits());
+        }
+
+        @Test
+        public void returnedEntitiesDoNotShareCachedState() {
+            airports.findById("MNK").get().setCity("Гродно");
+
+            assertEquals("Минск", airports.findById("MNK").get().getCity());
+        }
+
+        @Test
+        public void readBeforeCommitIsNotCached() {
+            TransactionTemplate.READ_WRITE.execute(connection -> {
+                Airport airport = airports.findById("MNK").get();
+                airport.setCity("Гродно");
+                airports.update("MNK", airport);
+
+                Airport committed = CompletableFuture.supplyAsync(() -> airports.findById("MNK").get()).join();
+                assertEquals("Минск", committed.getCity());
+                return null;
+            });
+
+            assertEquals("Гродно", airports.findById("MNK").get().getCity());
+        }
+
+        @Test
+        public void leastRecentlyUsedEntryIsEvicted() {
+            airports.warmUp();
+
+            CacheStats stats = airports.getStats();
+            assertEquals(2, stats.getSize());
+            assertEquals(2, stats.getEvictions());
+        }
+    }
+
+    @Nested
+    class AsyncDaoTest {
+        private final AsyncDao<Long, Ticket> tickets = new AsyncDao<>(TicketDao.getInstance());
+
+        @Test
+        public void findById() throws Exception {
+            Ticket ticket = tickets.findById(1L).get(5, TimeUnit.SECONDS).get();
+
+            assertEquals(ticketDao.findById(1L).get(), ticket);
+        }
+
+        @Test
+        public void concurrentLookupsComplete() throws Exception {
+            List<CompletableFuture<Optional<Ticket>>> futures = new ArrayList<>();
+            for (long id = 1; id <= 50; id++) {
+                futures.add(tickets.findById(id));
+            }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i + 1L, futures.get(i).join().get().getId());
+            }
+        }
+
+        @Test
+        public void saveAndDelete() throws Exception {
+            Ticket saved = tickets.save(generateTicket()).get(5, TimeUnit.SECONDS);
+
+            assertTrue(tickets.delete(saved.getId()).get(5, TimeUnit.SECONDS));
+            assertTrue(ticketDao.findById(saved.getId()).isEmpty());
+        }
+    }
+
+    @Nested
+    class TransactionTemplateTest {
+        private final AsyncDao<Long, Ticket> tickets = new AsyncDao<>(TicketDao.getInstance());
+
+        @Test
+        public void nestedDaoCallsShareTransactionConnection() {
+            Connection connection = TransactionTemplate.READ_WRITE.execute(bound -> {
+                try (Connection nested = ConnectionManager.open()) {
+                    assertSame(bound, nested);
+                }
+                assertFalse(bound.isClosed());
+                return bound;
+            });
+
+            assertEquals(0, ConnectionManager.getPool().getActiveCount());
+            assertThrows(SQLException.class, connection::getAutoCommit);
+        }
+
+        @Test
+        public void failureRollsBackNestedDaoCalls() {
+            assertThrows(IllegalStateException.class, () -> TransactionTemplate.READ_WRITE.execute(connection -> {
+                ticketDao.save(generateTicket());
+                flightDao.updateDataByFlightId(9L, FlightUpdateInfo.builder().flightNo("NW111").build(),
+                        new TicketUpdateInfo(1));
+                throw new IllegalStateException("boom");
+            }));
+
+            assertEquals(55, ticketDao.findAll().size());
+            assertEquals("QS8712", flightDao.findById(9L).get().getFlightNo());
+        }
+
+        @Test
+        public void uncommittedChangesAreInvisibleToOtherThreads() {
+            Ticket saved = TransactionTemplate.READ_WRITE.execute(connection -> {
+                Ticket ticket = ticketDao.save(generateTicket());
+                assertTrue(tickets.findById(ticket.getId()).join().isEmpty());
+                return ticket;
+            });
+
+            assertTrue(ticketDao.findById(saved.getId()).isPresent());
+        }
+
+        @Test
+        public void swallowedNestedFailureMarksTransactionRollbackOnly() {
+            assertThrows(IllegalStateException.class, () -> TransactionTemplate.READ_WRITE.execute(connection -> {
+                ticketDao.updateTickets(TicketFilter.builder().flightId(9L).build(), new TicketUpdateInfo(1));
+                try {
+                    TransactionTemplate.READ_WRITE.execute(nested -> {
+                        throw new IllegalArgumentException("nested");
+                    });
+                } catch (IllegalArgumentException ignored) {
+                    // the outer transaction must not commit anyway
+                }
+                return null;
+            }));
+
+            assertTrue(ticketDao.findTicketsByFlightId(9L).stream().noneMatch(ticket -> ticket.getCost() == 1));
+        }
+
+        @Test
+        public void readOnlyTransactionRejectsWrites() {
+            TransactionTemplate snapshot = TransactionTemplate.builder()
+                    .readOnly(true)
+                    .isolation(TransactionTemplate.Isolation.REPEATABLE_READ)
+                    .build();
+
+            assertThrows(RuntimeException.class, () -> snapshot.execute(connection ->
+                    ticketDao.updateTickets(TicketFilter.builder().flightId(9L).build(), new TicketUpdateInfo(1))));
+            assertThrows(IllegalStateException.class, () -> TransactionTemplate.READ_ONLY.execute(connection ->
+                    TransactionTemplate.READ_WRITE.execute(nested -> 1)));
+        }
+
+        @Test
+        public void readOnlyTransactionRunsInAutoCommitMode() {
+            int size = TransactionTemplate.READ_ONLY.execute(connection -> {
+                assertTrue(connection.getAutoCommit());
+                assertTrue(connection.isReadOnly());
+                return ticketDao.findTicketsByFlightId(9L).size();
+            });
+
+            assertEquals(8, size);
+            try (Connection connection = ConnectionManager.open()) {
+                assertFalse(connection.isReadOnly());
+                assertTrue(connection.getAutoCommit());
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    @Nested
+    class SeatAvailabilityTest {
+        private final SeatAvailability availability = SeatAvailability.getInstance();
+
+        @BeforeEach
+        public void dropLoadedFlights() {
+            // the schema is recreated by a script for every test
+            availability.invalidateAll();
+            QueryMetrics.getInstance().reset();
+        }
+
+        @Test
+        public void freeSeatsAreListedFrontToBack() {
+            assertEquals(List.of("C1", "D2"), availability.findFreeSeats(1L, 10));
+            assertEquals(List.of("C1"), availability.findFreeSeats(1L, 1));
+            assertEquals(2, availability.countFreeSeats(1L));
+            assertTrue(availability.isFree(1L, "D2"));
+            assertFalse(availability.isFree(1L, "A1"));
+        }
+
+        @Test
+        public void ticketWritesUpdateLoadedFlight() {
+            assertTrue(availability.isFree(8L, "B1"));
+
+            Ticket ticket = ticketDao.save(generateTicket());
+            assertFalse(availability.isFree(8L, "B1"));
+
+            ticket.setSeatNo("C1");
+            ticketDao.update(ticket.getId(), ticket);
+            assertTrue(availability.isFree(8L, "B1"));
+            assertFalse(availability.isFree(8L, "C1"));
+
+            ticketDao.delete(ticket.getId());
+            assertTrue(availability.isFree(8L, "C1"));
+            assertEquals(1, QueryMetrics.getInstance().getOperation("SeatAvailability.FIND_FLIGHT_SEATS_SQL")
+                    .getCount());
+        }
+
+        @Test
+        public void rolledBackTicketLeavesSeatFree() {
+            assertTrue(availability.isFree(8L, "B1"));
+
+            assertThrows(IllegalStateException.class, () -> TransactionTemplate.READ_WRITE.execute(connection -> {
+                ticketDao.save(generateTicket());
+                throw new IllegalStateException("boom");
+            }));
+
+            assertTrue(availability.isFree(8L, "B1"));
+        }
+
+        @Test
+        public void layoutChangesReloadFlight() {
+            assertEquals(2, availability.countFreeSeats(1L));
+            seatDao.save(Seat.builder().aircraftId(3).seatNo("E1").build());
+            assertEquals(2, availability.countFreeSeats(1L));
+
+            Flight flight = flightDao.findById(1L).get();
+            flight.setAircraftId(3L);
+            flightDao.update(1L, flight);
+
+            assertEquals(List.of("C1", "E1", "D2"), availability.findFreeSeats(1L, 10));
+        }
+
+        @Test
+        public void unknownFlightOrSeatIsRejected() {
+            assertThrows(IllegalArgumentException.class, () -> availability.findFreeSeats(100L, 1));
+            assertThrows(IllegalArgumentException.class, () -> availability.isFree(1L, "Z9"));
+        }
+    }
+
+    @Nested
+    class BookingDaoTest {
+        private final BookingDao bookingDao = BookingDao.getInstance();
+
+        @BeforeEach
+        public void dropLoadedFlights() {
+            SeatAvailability.getInstance().invalidateAll();
+        }
+
+        @Test
+        public void takenSeatIsNotBooked() {
+            long conflicts = bookingDao.getConflictCount();
+
+            assertTrue(bookingDao.book(ticket("BK0001", "Иван Иванов", 1L, "A1", 100)).isEmpty());
+            assertEquals(conflicts, bookingDao.getConflictCount());
+            assertEquals(6, ticketDao.findTicketsByFlightId(1L).size());
+        }
+
+        @Test
+        public void seatTakenBehindCacheIsReportedAsConflict() throws SQLException {
+            assertTrue(SeatAvailability.getInstance().isFree(1L, "C1"));
+            try (Connection connection = ConnectionManager.open()) {
+                connection.createStatement().executeUpdate("""
+                        INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost)
+                        VALUES ('BK0002', 'Петр Петров', 1, 'C1', 100)
+                        """);
+            }
+            assertTrue(SeatAvailability.getInstance().isFree(1L, "C1"));
+            long conflicts = bookingDao.getConflictCount();
+
+            assertEquals("D2", bookingDao.bookAnySeat(ticket("BK0001", "Иван Иванов", 1L, "C1", 100))
+                    .get().getSeatNo());
+            assertEquals(conflicts + 1, bookingDao.getConflictCount());
+        }
+
+        @Test
+        public void freeSeatIsBooked() {
+            Ticket ticket = bookingDao.book(ticket("BK0001", "Иван Иванов", 1L, "C1", 100)).get();
+
+            assertEquals(ticket, ticketDao.findById(ticket.getId()).get());
+            assertFalse(SeatAvailability.getInstance().isFree(1L, "C1"));
+        }
+
+        @Test
+        public void takenSeatFallsBackToFirstFreeSeat() {
+            assertEquals("C1", bookingDao.bookAnySeat(ticket("BK0001", "Иван Иванов", 1L, "A1", 100))
+                    .get().getSeatNo());
+            assertEquals("D2", bookingDao.bookAnySeat(ticket("BK0001", "Иван Иванов", 1L, null, 100))
+                    .get().getSeatNo());
+            assertTrue(bookingDao.bookAnySeat(ticket("BK0001", "Иван Иванов", 1L, "A1", 100)).isEmpty());
+        }
+
+        @Test
+        public void concurrentBookingsNeverShareSeat() throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Optional<Ticket>>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    futures.add(executor.submit(() ->
+                            bookingDao.bookAnySeat(ticket("BK0001", "Иван Иванов", 8L, "A1", 100))));
+                }
+
+                List<String> booked = new ArrayList<>();
+                for (Future<Optional<Ticket>> future : futures) {
+                    future.get(10, TimeUnit.SECONDS).ifPresent(ticket -> booked.add(ticket.getSeatNo()));
+                }
+                assertEquals(Set.of("B1", "C1", "C2", "D2"), booked.stream().collect(Collectors.toSet()));
+                assertEquals(4, booked.size());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Nested
+    class PassengerCountsTest {
+
+        @Test
+        public void savedTicketsAreCounted() {
+            ticketDao.saveAll(List.of(ticket("ZZ0001", "Зоя Зайцева", 8L, "B1", 100),
+                    ticket("ZZ0001", "Зоя Зайцева", 8L, "C1", 100),
+                    ticket("ZZ0002", "Зоя Волкова", 8L, "C2", 100)));
+            ticketDao.save(ticket("ZZ0003", "Зоя Лисицына", 8L, "D2", 100));
+
+            Map<String, Integer> tickets = ticketDao.findPassengerTotalTicketCount();
+            assertEquals(42, tickets.size());
+            assertEquals(2, tickets.get("Зоя Зайцева"));
+            assertEquals(List.of("Иван", "Андрей", "Зоя"), ticketDao.findMostCommonNames(3));
+        }
+
+        @Test
+        public void updateMovesTicketToNewPassenger() {
+            Ticket ticket = ticketDao.findById(1L).get();
+            ticket.setPassportNo("ZZ0001");
+            ticket.setPassengerName("Зоя Зайцева");
+            ticketDao.update(1L, ticket);
+
+            Map<String, Integer> tickets = ticketDao.findPassengerTotalTicketCount();
+            assertEquals(3, tickets.get("Иван Иванов"));
+            assertEquals(1, tickets.get("Зоя Зайцева"));
+        }
+
+        @Test
+        public void costUpdateLeavesCountsAlone() {
+            Map<String, Integer> before = ticketDao.findPassengerTotalTicketCount();
+            ticketDao.updateTickets(TicketFilter.builder().passengerName("Иван Иванов").build(),
+                    new TicketUpdateInfo(1));
+
+            assertEquals(before, ticketDao.findPassengerTotalTicketCount());
+        }
+
+        @Test
+        public void deletingLastTicketRemovesPassenger() {
+            ticketDao.delete(55L);
+
+            Map<String, Integer> tickets = ticketDao.findPassengerTotalTicketCount();
+            assertEquals(38, tickets.size());
+            assertFalse(tickets.containsKey("Полина Зверева"));
+            assertFalse(ticketDao.findMostCommonNames(100).contains("Полина"));
+        }
+
+        @Test
+        public void concurrentDeletesOfLastTicketsRemovePassenger() throws Exception {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try (Connection first = ConnectionManager.open()) {
+                // Эдуард Щеглов has tickets 14 and 35, both deletes start from a count of 2
+                first.setAutoCommit(false);
+                first.createStatement().executeUpdate("DELETE FROM ticket WHERE id = 14");
+                Future<Integer> second = executor.submit(() -> {
+                    try (Connection connection = ConnectionManager.open()) {
+                        return connection.createStatement().executeUpdate("DELETE FROM ticket WHERE id = 35");
+                    }
+                });
+                awaitLockWaiter();
+                first.commit();
+                assertEquals(1, second.get(10, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdown();
+            }
+
+            assertFalse(ticketDao.findPassengerTotalTicketCount().containsKey("Эдуард Щеглов"));
+            assertFalse(ticketDao.findMostCommonNames(100).contains("Эдуард"));
+        }
+
+        @Test
+        public void truncatingTicketsClearsCounts() throws SQLException {
+            try (Connection connection = ConnectionManager.open()) {
+                connection.createStatement().execute("TRUNCATE ticket");
+            }
+
+            assertTrue(ticketDao.findPassengerTotalTicketCount().isEmpty());
+            assertTrue(ticketDao.findMostCommonNames(3).isEmpty());
+        }
+
+        @Test
+        public void rebuildRecountsTicketsWrittenWithoutTriggers() throws SQLException {
+            try (Connection connection = ConnectionManager.open()) {
+                connection.createStatement().execute("ALTER TABLE ticket DISABLE TRIGGER ticket_passengers");
+                connection.createStatement().executeUpdate("""
+                        INSERT INTO ticket (passport_no, passenger_name, flight_id, seat_no, cost)
+                        VALUES ('ZZ0001', 'Зоя Зайцева', 8, 'B1', 100)
+                        """);
+                connection.createStatement().execute("ALTER TABLE ticket ENABLE TRIGGER ticket_passengers");
+            }
+            assertFalse(ticketDao.findPassengerTotalTicketCount().containsKey("Зоя Зайцева"));
+
+            assertEquals(41, ticketDao.rebuildPassengerCounts());
+            Map<String, Integer> tickets = ticketDao.findPassengerTotalTicketCount();
+            assertEquals(1, tickets.get("Зоя Зайцева"));
+            assertEquals(4, tickets.get("Иван Иванов"));
+            assertEquals(List.of("Иван", "Андрей", "Лариса"), ticketDao.findMostCommonNames(3));
+        }
+
+        private static void awaitLockWaiter() throws Exception {
+            try (Connection connection = ConnectionManager.open();
+                 PreparedStatement statement = connection.prepareStatement("""
+                         SELECT count(*) FROM pg_stat_activity WHERE datname = current_database() AND wait_event_type = 'Lock'
+                         """)) {
+                for (int attempt = 0; attempt < 200; attempt++) {
+                    ResultSet result = statement.executeQuery();
+                    result.next();
+                    if (result.getInt(1) > 0) {
+                        return;
+                    }
+                    Thread.sleep(25);
+                }
+            }
+            fail("No statement waited for a lock");
+        }    }
+
+    @Nested
+    class TicketAnalyticsTest {
+        private final TicketAnalytics analytics = TicketAnalytics.getInstance();
+
+        @BeforeEach
+        public void clear() {
+            analytics.clear();
+        }
+
+        @Test
+        public void rebuildMatchesExactQueries() {
+            analytics.rebuild(2);
+
+            assertEquals(ticketDao.findMostCommonNames(3), analytics.findMostCommonNames(3));
+            long passports = ticketDao.findAll().stream().map(Ticket::getPassportNo).distinct().count();
+            assertEquals(passports, analytics.estimateDistinctPassengers());
+            int revenue = ticketDao.findTicketsByFlightId(9L).stream().mapToInt(Ticket::getCost).sum();
+            assertEquals(revenue, analytics.estimateFlightRevenue(9L));
+        }
+
+        @Test
+        public void committedInsertsAreRecorded() {
+            ticketDao.save(generateTicket());
+            assertThrows(IllegalStateException.class, () -> TransactionTemplate.READ_WRITE.execute(connection -> {
+                ticketDao.save(ticket("ZZ0002", "Зоя Волкова", 8L, "C1", 1000));
+                throw new IllegalStateException("rolled back");
+            }));
+
+            assertEquals(1, analytics.estimateDistinctPassengers());
+            assertEquals(generateTicket().getCost(), analytics.estimateFlightRevenue(8L));
+        }
+
+        @Test
+        public void deltasOfAnotherNodeAreMergedOnce() {
+            analytics.rebuild(2);
+            byte[] beforeSale = analytics.toByteArray();
+            long revenue = analytics.getTotalRevenue();
+            long passports = analytics.estimateDistinctPassengers();
+
+            Ticket sold = ticketDao.save(generateTicket());
+            byte[] delta = analytics.exportDelta();
+            byte[] emptyDelta = analytics.exportDelta();
+
+            // a peer that has not seen the sale yet
+            analytics.replace(beforeSale);
+            assertEquals(revenue, analytics.getTotalRevenue());
+            analytics.merge(delta);
+            analytics.merge(emptyDelta);
+
+            assertEquals(revenue + sold.getCost(), analytics.getTotalRevenue());
+            int flightRevenue = ticketDao.findTicketsByFlightId(sold.getFlightId()).stream().mapToInt(Ticket::getCost).sum();
+            assertEquals(flightRevenue, analytics.estimateFlightRevenue(sold.getFlightId()));
+            assertEquals(passports + 1, analytics.estimateDistinctPassengers());
+            assertEquals(ticketDao.findMostCommonNames(3), analytics.findMostCommonNames(3));
+            assertThrows(IllegalArgumentException.class, () -> analytics.merge(new byte[]{1, 2, 3}));
+        }
+
+        @Test
+        public void rebuildReplacesSketchesAndKeepsDelta() {
+            byte[] empty = analytics.toByteArray();
+            Ticket sold = ticketDao.save(generateTicket());
+
+            analytics.rebuild(2);
+            assertEquals(ticketDao.findAll().stream().mapToLong(Ticket::getCost).sum(), analytics.getTotalRevenue());
+
+            // the scan saw the sale, the peers have not
+            byte[] delta = analytics.exportDelta();
+            analytics.replace(empty);
+            analytics.merge(delta);
+            assertEquals(sold.getCost(), analytics.getTotalRevenue());
+        }
+    }
+
+    @Nested
+    class UpsertTest {
+
+        @Test
+        public void airportUpsertInsertsOrOverwrites() {
+            airportDao.upsert(Airport.builder().code("MNK").country("Беларусь").city("Минск-2").build());
+            airportDao.upsert(Airport.builder().code("VNO").country("Литва").city("Вильнюс").build());
+
+            assertEquals("Минск-2", airportDao.findById("MNK").get().getCity());
+            assertEquals("Вильнюс", airportDao.findById("VNO").get().getCity());
+            assertEquals(5, airportDao.findAll().size());
+        }
+
+        @Test
+        public void upsertAllKeepsLastEntityPerKey() {
+            List<Airport> upserted = airportDao.upsertAll(List.of(
+                    Airport.builder().code("VNO").country("Литва").city("Вильнюс").build(),
+                    Airport.builder().code("MNK").country("Беларусь").city("Минск-2").build(),
+                    Airport.builder().code("VNO").country("Литва").city("Каунас").build()));
+
+            assertEquals(2, upserted.size());
+            assertEquals("Каунас", airportDao.findById("VNO").get().getCity());
+            assertEquals("Минск-2", airportDao.findById("MNK").get().getCity());
+        }
+
+        @Test
+        public void flightUpsertMatchesNumberAndDeparture() {
+            Flight existing = flightDao.findById(9L).get();
+            existing.setId(null);
+            existing.setStatus("CANCELLED");
+
+            assertEquals(9L, flightDao.upsert(existing).getId());
+            assertEquals("CANCELLED", flightDao.findById(9L).get().getStatus());
+            assertEquals(9, flightDao.findAll().size());
+        }
+
+        @Test
+        public void flightFeedReloadTakesFewRoundTrips() {
+            List<Flight> feed = new ArrayList<>();
+            LocalDateTime departure = LocalDateTime.of(2024, 3, 1, 6, 0);
+            for (int i = 0; i < 1000; i++) {
+                feed.add(Flight.builder()
+                        .flightNo("FD%04d".formatted(i))
+                        .departureDate(departure.plusMinutes(i))
+                        .departureAirportCode("MNK")
+                        .arrivalDate(departure.plusMinutes(i).plusHours(2))
+                        .arrivalAirportCode("LDN")
+                        .aircraftId(1L)
+                        .status("SCHEDULED")
+                        .build());
+            }
+            QueryMetrics.getInstance().reset();
+
+            List<Long> firstIds = flightDao.upsertAll(feed).stream().map(Flight::getId).toList();
+            feed.forEach(flight -> flight.setStatus("DEPARTED"));
+            List<Long> secondIds = flightDao.upsertAll(feed).stream().map(Flight::getId).toList();
+
+            assertEquals(firstIds, secondIds);
+            assertEquals(1009, flightDao.findAll().size());
+            assertEquals("DEPARTED", flightDao.findById(firstIds.get(0)).get().getStatus());
+            assertEquals(4, QueryMetrics.getInstance().getOperation("FlightDao.UPSERT_SQL").getCount());
+        }
+
+        @Test
+        public void ticketUpsertMatchesFlightAndSeat() {
+            Ticket existing = ticketDao.findTicketsByFlightId(9L).stream()
+                    .filter(ticket -> ticket.getSeatNo().equals("A2"))
+                    .findFirst().get();
+            Ticket imported = ticket("AI0001", "Анна Иванова", 9L, "A2", 300);
+
+            assertEquals(existing.getId(), ticketDao.upsert(imported).getId());
+            assertEquals("Анна Иванова", ticketDao.findById(existing.getId()).get().getPassengerName());
+            assertEquals(55, ticketDao.findAll().size());
+        }
+
+        @Test
+        public void ticketUpsertAllOccupiesSeats() {
+            SeatAvailability.getInstance().invalidateAll();
+            assertTrue(SeatAvailability.getInstance().isFree(8L, "B1"));
+
+            Ticket taken = generateTicket();
+            taken.setSeatNo("A1");
+            List<Ticket> upserted = ticketDao.upsertAll(List.of(generateTicket(), taken));
+
+            assertEquals(2, upserted.size());
+            assertFalse(SeatAvailability.getInstance().isFree(8L, "B1"));
+            assertEquals(56, ticketDao.findAll().size());
+        }
+
+        @Test
+        public void seatUpsertKeepsExistingSeat() {
+            List<Seat> upserted = seatDao.upsertAll(List.of(Seat.builder().aircraftId(1).seatNo("A1").build(),
+                    Seat.builder().aircraftId(1).seatNo("E1").build()));
+
+            assertEquals(2, upserted.size());
+            assertEquals(33, seatDao.findAll().size());
+        }
+
+        @Test
+        public void cachedUpsertInvalidatesEntry() {
+            CachingUpsertDao<String, Airport> airports = new CachingUpsertDao<>("airport", airportDao,
+                    Airport::getCode, airport -> airport.toBuilder().build(), 2, 60_000);
+            assertEquals("Минск", airports.findById("MNK").get().getCity());
+
+            airports.upsert(Airport.builder().code("MNK").country("Беларусь").city("Минск-2").build());
+            assertEquals("Минск-2", airports.findById("MNK").get().getCity());
+        }
+    }
+
+    @Nested
+    class ParallelScanTest {
+
+        @Test
+        public void findAllParallelReturnsTicketsInIdOrder() {
+            List<Ticket> expected = ticketDao.findAll().stream()
+                    .sorted(Comparator.comparing(Ticket::getId))
+                    .toList();
+
+            assertEquals(expected, ticketDao.findAllParallel(1));
+            assertEquals(expected, ticketDao.findAllParallel(4));
+            assertEquals(0, ConnectionManager.getPool().getActiveCount());
+        }
+
+        @Test
+        public void findAllParallelReturnsFlightsInIdOrder() {
+            List<Flight> expected = flightDao.findAll().stream()
+                    .sorted(Comparator.comparing(Flight::getId))
+                    .toList();
+
+            assertEquals(expected, flightDao.findAllParallel(3));
+        }
+
+        @Test
+        public void forEachParallelVisitsEveryTicketOnce() {
+            Queue<Long> ids = new ConcurrentLinkedQueue<>();
+            ticketDao.forEachParallel(4, ticket -> ids.add(ticket.getId()));
+
+            assertEquals(55, ids.size());
+            assertEquals(55, Set.copyOf(ids).size());
+            assertEquals(0, ConnectionManager.getPool().getActiveCount());
+        }
+
+        @Test
+        public void rangesShareTheSnapshotOfTheScanStart() {
+            AtomicBoolean deleted = new AtomicBoolean();
+            Queue<Long> ids = new ConcurrentLinkedQueue<>();
+            ticketDao.forEachParallel(2, ticket -> {
+                if (deleted.compareAndSet(false, true)) {
+                    ticketDao.delete(55L);
+                }
+                ids.add(ticket.getId());
+            });
+
+            assertTrue(ticketDao.findById(55L).isEmpty());
+            assertTrue(ids.contains(55L));
+            assertEquals(55, ids.size());
+        }
+
+        @Test
+        public void scanCannotJoinTransaction() {
+            assertThrows(IllegalStateException.class,
+                    () -> TransactionTemplate.READ_ONLY.execute(connection -> ticketDao.findAllParallel(2)));
+            assertThrows(IllegalArgumentException.class, () -> ticketDao.findAllParallel(0));
+        }
+    }
+
+    @Nested
+    class ItineraryDaoTest {
+        private final ItineraryDao itineraryDao = ItineraryDao.getInstance();
+
+        @Test
+        public void findByFlightId() {
+            Itinerary itinerary = itineraryDao.findByFlightId(9L).get();
+
+            assertEquals("QS8712", itinerary.getFlight().getFlightNo());
+            assertEquals("Минск", itinerary.getDepartureAirport().getCity());
+            assertEquals("Лондон", itinerary.getArrivalAirport().getCity());
+            assertEquals("Боинг 737-300", itinerary.getAircraft().getModel());
+            assertEquals(8, itinerary.getTickets().size());
+        }
+
+        @Test
+        public void airportsAreSharedBetweenItineraries() {
+            Map<Long, Itinerary> itineraries = itineraryDao.findByFlightIds(List.of(1L, 3L));
+
+            assertEquals(2, itineraries.size());
+            assertSame(itineraries.get(1L).getDepartureAirport(), itineraries.get(3L).getDepartureAirport());
+            assertSame(itineraries.get(1L).getArrivalAirport(), itineraries.get(3L).getArrivalAirport());
+        }
+
+        @Test
+        public void flightWithoutTicketsHasEmptyTicketList() {
+            Flight flight = flightDao.save(FlightDaoTest.generateFlight());
+
+            Itinerary itinerary = itineraryDao.findByFlightId(flight.getId()).get();
+            assertTrue(itinerary.getTickets().isEmpty());
+        }
+    }
+
+    @Nested
+    class DataGeneratorTest {
+        private final GeneratorConfig config = GeneratorConfig.builder()
+                .seed(7)
+                .airports(6)
+                .aircraft(3)
+                .startDate(LocalDate.of(2023, 5, 1))
+                .days(2)
+                .flightsPerDay(5)
+                .loadFactor(0.5)
+                .passengers(50)
+                .build();
+
+        @Test
+        public void generateConsistentData() {
+            GenerationReport report = new DataGenerator(config).generate();
+
+            assertEquals(6, report.getAirports());
+            assertEquals(10, report.getFlights());
+            assertTrue(report.getTickets() > 0);
+            assertEquals(10, airportDao.findAll().size());
+            assertEquals(19, flightDao.findAll().size());
+            assertEquals(55 + report.getTickets(), ticketDao.findAll().size());
+
+            List<Seat> seats = seatDao.findAll();
+            for (Flight flight : flightDao.findAll().subList(9, 19)) {
+                List<String> seatNos = seats.stream()
+                        .filter(seat -> seat.getAircraftId() == flight.getAircraftId().intValue())
+                        .map(Seat::getSeatNo)
+                        .toList();
+                List<Ticket> tickets = ticketDao.findTicketsByFlightId(flight.getId());
+                assertTrue(tickets.stream().allMatch(ticket -> seatNos.contains(ticket.getSeatNo())));
+                assertTrue(flight.getArrivalDate().isAfter(flight.getDepartureDate()));
+            }
+        }
+
+        @Test
+        public void sameSeedGeneratesSameRows() throws Exception {
+            new DataGenerator(config).generate();
+            List<Flight> flights = flightDao.findAll();
+            List<Ticket> tickets = ticketDao.findAll();
+
+            dropDatabase();
+            init();
+            new DataGenerator(config).generate();
+
+            assertEquals(flights, flightDao.findAll());
+            assertEquals(tickets, ticketDao.findAll());
+        }
+
+        @Test
+        public void rejectInvalidLoadFactor() {
+            GeneratorConfig invalid = GeneratorConfig.builder().loadFactor(1.5).build();
+            assertThrows(IllegalArgumentException.class, () -> new DataGenerator(invalid));
+        }
+    }
+
+    @Nested
+    class QueryMetricsTest {
+        private final QueryMetrics metrics = QueryMetrics.getInstance();
+
+        @BeforeEach
+        public void resetMetrics() {
+            metrics.reset();
+        }
+
+        @Test
+        public void recordLatencyAndRowsPerSqlConstant() {
+            ticketDao.findById(1L);
+            ticketDao.findById(2L);
+            ticketDao.findAll();
+
+            OperationStats findById = metrics.getOperation("TicketDao.FIND_BY_ID_SQL");
+            assertEquals(2, findById.getCount());
+            assertEquals(2, findById.getRows());
+            assertEquals(0, findById.getErrors());
+            assertTrue(findById.getMaxMicros() > 0);
+            assertTrue(findById.getP50Micros() <= findById.getP99Micros());
+            assertEquals(55, metrics.getOperation("TicketDao.FIND_ALL_SQL").getRows());
+            assertTrue(metrics.getConnectionWait().getCount() >= 3);
+        }
+
+        @Test
+        public void countFailedExecutions() {
+            Ticket ticket = ticket("1", "Иван Иванов", 1L, "A1", 1);
+
+            assertThrows(RuntimeException.class, () -> ticketDao.save(ticket));
+
+            OperationStats insert = metrics.getOperation("TicketDao.INSERT_SQL");
+            assertEquals(1, insert.getCount());
+            assertEquals(1, insert.getErrors());
+        }
+
+        @Test
+        public void passEventsToSinks() {
+            List<QueryEvent> events = new CopyOnWriteArrayList<>();
+            MetricsSink sink = events::add;
+            metrics.addSink(sink);
+            try {
+                ticketDao.updateTickets(TicketFilter.builder().flightId(9L).build(), new TicketUpdateInfo(100));
+            } finally {
+                metrics.removeSink(sink);
+            }
+
+            QueryEvent event = events.stream()
+                    .filter(e -> e.operation().startsWith("UPDATE ticket"))
+                    .findFirst()
+                    .orElseThrow();
+            assertEquals(2, event.parameterCount());
+            assertEquals(8, event.rows());
+        }
+
+        @Test
+        public void exposeOperationsOverJmx() throws Exception {
+            ticketDao.findById(1L);
+
+            Object operations = ManagementFactory.getPlatformMBeanServer()
+                    .getAttribute(new ObjectName("by.javaguru:type=QueryMetrics"), "Operations");
+
+            assertTrue(((TabularData) operations).containsKey(new Object[]{"TicketDao.FIND_BY_ID_SQL"}));
+        }
+    }
+}
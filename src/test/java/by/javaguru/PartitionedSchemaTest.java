@@ -0,0 +1,212 @@
+package by.javaguru;
+
+import by.javaguru.dao.BookingDao;
+import by.javaguru.dao.CopyLoader;
+import by.javaguru.dao.FlightDao;
+import by.javaguru.dao.PartitionMaintenance;
+import by.javaguru.dao.SeatAvailability;
+import by.javaguru.dao.TicketDao;
+import by.javaguru.entity.Flight;
+import by.javaguru.entity.Ticket;
+import by.javaguru.metrics.MetricsSink;
+import by.javaguru.metrics.QueryEvent;
+import by.javaguru.metrics.QueryMetrics;
+import by.javaguru.util.ConnectionManager;
+import by.javaguru.util.SQLScriptRunner;
+import by.javaguru.util.TransactionTemplate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The DAOs against create-database-partitioned.sql, run with {@code mvn -Ppartitioned test}.
+ */
+@EnabledIfSystemProperty(named = "db.schema.partitioned", matches = "true")
+class PartitionedSchemaTest {
+    private final TicketDao ticketDao = TicketDao.getInstance();
+    private final FlightDao flightDao = FlightDao.getInstance();
+    private final PartitionMaintenance maintenance = PartitionMaintenance.getInstance();
+
+    @BeforeEach
+    public void init() throws Exception {
+        Path path = Path.of("src", "test", "resources", "create-database-partitioned.sql").toAbsolutePath();
+        try (Connection connection = ConnectionManager.open()) {
+            SQLScriptRunner.execute(path.toString(), connection);
+        }
+    }
+
+    @AfterEach
+    public void dropDatabase() throws Exception {
+        Path path = Path.of("src", "test", "resources", "drop-database.sql").toAbsolutePath();
+        try (Connection connection = ConnectionManager.open()) {
+            SQLScriptRunner.execute(path.toString(), connection);
+        }
+    }
+
+    @AfterAll
+    public static void closeConnection() {
+        ConnectionManager.close();
+    }
+
+    @Test
+    public void ticketsAreStoredInPartitionOfTheirFlight() {
+        Ticket saved = ticketDao.save(ticket(9L, "C1"));
+        List<Ticket> batch = ticketDao.saveAll(List.of(ticket(5L, "A2"), ticket(7L, "B2")));
+        Ticket upserted = ticketDao.upsert(ticket(9L, "C1"));
+        Ticket booked = BookingDao.getInstance().bookAnySeat(ticket(8L, null)).orElseThrow();
+
+        assertEquals("ticket_p2020_12", partitionOf(saved.getId()));
+        assertEquals("ticket_p2020_05", partitionOf(batch.get(0).getId()));
+        assertEquals("ticket_p2020_09", partitionOf(batch.get(1).getId()));
+        assertEquals(saved.getId(), upserted.getId());
+        assertEquals("ticket_p2020_09", partitionOf(booked.getId()));
+        assertEquals(9, ticketDao.findTicketsByFlightId(9L).size());
+        assertEquals(4, ticketDao.findPassengerTotalTicketCount().get("Анна Кузнецова"));
+    }
+
+    @Test
+    public void ticketsMoveWithTheirFlight() {
+        Ticket ticket = ticketDao.findTicketsByFlightId(1L).get(0);
+        ticket.setFlightId(5L);
+        ticket.setSeatNo("D2");
+        assertTrue(ticketDao.update(ticket.getId(), ticket));
+        assertEquals("ticket_p2020_05", partitionOf(ticket.getId()));
+
+        Flight flight = flightDao.findById(2L).orElseThrow();
+        flight.setDepartureDate(LocalDateTime.of(2020, 10, 1, 9, 15));
+        flight.setArrivalDate(LocalDateTime.of(2020, 10, 1, 13, 0));
+        assertTrue(flightDao.update(2L, flight));
+
+        List<Ticket> tickets = ticketDao.findTicketsByFlightId(2L);
+        assertEquals(5, tickets.size());
+        tickets.forEach(moved -> assertEquals("ticket_p2020_10", partitionOf(moved.getId())));
+    }
+
+    @Test
+    public void flightSearchScansPartitionsOfTheWindow() {
+        LocalDateTime from = LocalDateTime.of(2020, 6, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2020, 8, 1, 0, 0);
+        String sql = executedSql("FlightDao.SEARCH_SQL", () -> flightDao.search("MNK", "LDN", from, to, null, 10));
+
+        String plan = String.join("\n", queryColumn("EXPLAIN " + sql, "MNK", "LDN", Timestamp.valueOf(from),
+                Timestamp.valueOf(to), null, null, 10));
+        assertTrue(plan.contains("flight_p2020_06"), plan);
+        assertTrue(plan.contains("flight_p2020_07"), plan);
+        assertFalse(plan.contains("flight_p2020_05"), plan);
+        assertFalse(plan.contains("flight_p2020_12"), plan);
+    }
+
+    @Test
+    public void maintenanceCreatesFuturePartitionsAndDetachesOldOnes() {
+        assertTrue(SeatAvailability.getInstance().isFree(1L, "C1"));
+        maintenance.run(LocalDate.of(2021, 1, 15));
+        assertEquals(YearMonth.of(2021, 4), last(maintenance.findPartitionMonths("flight")));
+        assertEquals(YearMonth.of(2021, 4), last(maintenance.findPartitionMonths("ticket")));
+        assertTrue(maintenance.createPartitions(YearMonth.of(2020, 5), YearMonth.of(2021, 4)).isEmpty());
+
+        List<String> detached = maintenance.detachPartitionsBefore(YearMonth.of(2020, 7));
+        assertEquals(List.of("ticket_p2020_05", "flight_p2020_05", "ticket_p2020_06", "flight_p2020_06"), detached);
+        assertEquals(YearMonth.of(2020, 7), maintenance.findPartitionMonths("flight").iterator().next());
+
+        // flights 1, 2, 5 and 6 left with their 21 tickets, the counts were rebuilt without them
+        assertEquals(34, ticketDao.findAll().size());
+        Map<String, Integer> counts = ticketDao.findPassengerTotalTicketCount();
+        assertEquals(34, counts.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(List.of(), ticketDao.findTicketsByFlightId(1L));
+        assertThrows(IllegalArgumentException.class, () -> BookingDao.getInstance().bookAnySeat(ticket(1L, null)));
+        Flight future = flightDao.save(Flight.builder()
+                .flightNo("MN3003")
+                .departureDate(LocalDateTime.of(2021, 2, 1, 10, 0))
+                .departureAirportCode("MNK")
+                .arrivalDate(LocalDateTime.of(2021, 2, 1, 13, 0))
+                .arrivalAirportCode("LDN")
+                .aircraftId(1L)
+                .status("SCHEDULED")
+                .build());
+        assertEquals(future, flightDao.findById(future.getId()).orElseThrow());
+    }
+
+    @Test
+    public void ticketsCannotBeCopied() {
+        assertThrows(IllegalStateException.class, CopyLoader::tickets);
+    }
+
+    private static Ticket ticket(Long flightId, String seatNo) {
+        return Ticket.builder()
+                .passportNo("PP1234")
+                .passengerName("Анна Кузнецова")
+                .flightId(flightId)
+                .seatNo(seatNo)
+                .cost(300)
+                .build();
+    }
+
+    private static String partitionOf(Long ticketId) {
+        List<String> partitions = queryColumn("SELECT tableoid::regclass::text FROM ticket WHERE id = ?", ticketId);
+        assertEquals(1, partitions.size());
+        return partitions.get(0);
+    }
+
+    private static String executedSql(String operation, Runnable action) {
+        List<QueryEvent> events = new CopyOnWriteArrayList<>();
+        MetricsSink sink = events::add;
+        QueryMetrics.getInstance().addSink(sink);
+        try {
+            action.run();
+        } finally {
+            QueryMetrics.getInstance().removeSink(sink);
+        }
+        return events.stream()
+                .filter(event -> event.operation().equals(operation))
+                .findFirst()
+                .orElseThrow()
+                .sql();
+    }
+
+    /**
+     * Runs the query and returns the first column of every row.
+     */
+    private static List<String> queryColumn(String sql, Object... parameters) {
+        return TransactionTemplate.READ_ONLY.execute(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                ResultSet result = statement.executeQuery();
+                List<String> lines = new ArrayList<>();
+                while (result.next()) {
+                    lines.add(result.getString(1));
+                }
+                return lines;
+            }
+        });
+    }
+
+    private static YearMonth last(Iterable<YearMonth> months) {
+        YearMonth last = null;
+        for (YearMonth month : months) {
+            last = month;
+        }
+        return last;
+    }
+}
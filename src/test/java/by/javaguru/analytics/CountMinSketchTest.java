@@ -0,0 +1,67 @@
+package by.javaguru.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+    @Test
+    public void estimatesNeverUndercountAndStayWithinBound() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024);
+        Map<Long, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long flightId = random.nextInt(5_000);
+            long cost = 50 + random.nextInt(250);
+            sketch.add(flightId, cost);
+            exact.merge(flightId, cost, Long::sum);
+        }
+
+        long bound = (long) (Math.E / 1024 * sketch.getTotal());
+        exact.forEach((flightId, revenue) -> {
+            long estimate = sketch.estimate(flightId);
+            assertTrue(estimate >= revenue);
+            assertTrue(estimate - revenue <= bound, "flight %d overcounted by %d".formatted(flightId, estimate - revenue));
+        });
+    }
+
+    @Test
+    public void mergedSketchEqualsSketchOfBothStreams() {
+        CountMinSketch left = new CountMinSketch(4, 256);
+        CountMinSketch right = new CountMinSketch(4, 256);
+        for (long key = 0; key < 100; key++) {
+            left.add(key, key);
+            right.add(key, 1);
+        }
+
+        left.merge(right);
+        assertEquals(4950 + 100, left.getTotal());
+        for (long key = 0; key < 100; key++) {
+            assertTrue(left.estimate(key) >= key + 1);
+        }
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new CountMinSketch(4, 512)));
+    }
+
+    @Test
+    public void sketchSurvivesSerialization() {
+        CountMinSketch sketch = new CountMinSketch(4, 4096);
+        for (long key = 0; key < 1_000; key++) {
+            sketch.add(key, 200);
+        }
+        byte[] bytes = sketch.toByteArray();
+        CountMinSketch copy = CountMinSketch.fromByteArray(bytes);
+
+        assertTrue(bytes.length < 4 * 4096 * 2, "sketch takes " + bytes.length + " bytes");
+        assertEquals(sketch.getTotal(), copy.getTotal());
+        for (long key = 0; key < 1_000; key++) {
+            assertEquals(sketch.estimate(key), copy.estimate(key));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(4, 1000));
+    }
+}
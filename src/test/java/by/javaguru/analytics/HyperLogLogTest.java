@@ -0,0 +1,63 @@
+package by.javaguru.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+    @Test
+    public void estimatesStayWithinThreeStandardErrors() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (int n = 1; n <= 1_000_000; n++) {
+            sketch.add("PASSPORT" + n);
+            sketch.add("PASSPORT" + (n / 2 + 1));
+            if (n == 100 || n == 10_000 || n == 1_000_000) {
+                assertWithinError(n, sketch.estimate(), 3 * 1.04 / Math.sqrt(1 << 14));
+            }
+        }
+    }
+
+    @Test
+    public void mergeEstimatesTheUnion() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        for (long value = 0; value < 60_000; value++) {
+            left.add(value);
+            right.add(value + 30_000);
+        }
+
+        left.merge(right);
+        assertWithinError(90_000, left.estimate(), 3 * 1.04 / Math.sqrt(1 << 12));
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(14)));
+    }
+
+    @Test
+    public void sparseAndDenseSketchesSurviveSerialization() {
+        HyperLogLog sketch = new HyperLogLog(14);
+        for (long value = 0; value < 100; value++) {
+            sketch.add(value);
+        }
+        byte[] sparse = sketch.toByteArray();
+        assertTrue(sparse.length < 500, "sparse sketch takes " + sparse.length + " bytes");
+        assertArrayEquals(sparse, HyperLogLog.fromByteArray(sparse).toByteArray());
+
+        for (long value = 0; value < 100_000; value++) {
+            sketch.add(value);
+        }
+        byte[] dense = sketch.toByteArray();
+        HyperLogLog copy = HyperLogLog.fromByteArray(dense);
+        assertEquals(sketch.estimate(), copy.estimate());
+        assertArrayEquals(dense, copy.toByteArray());
+
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromByteArray(new byte[]{'H', 1, 14, 7}));
+        assertThrows(IllegalArgumentException.class, () -> CountMinSketch.fromByteArray(dense));
+    }
+
+    private static void assertWithinError(long expected, long actual, double relativeError) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeError,
+                "expected about %d, got %d".formatted(expected, actual));
+    }
+}
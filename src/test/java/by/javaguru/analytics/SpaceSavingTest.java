@@ -0,0 +1,61 @@
+package by.javaguru.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+    @Test
+    public void keepsHeavyHittersOfSkewedStream() {
+        SpaceSaving sketch = new SpaceSaving(32);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // a fifth of the stream each, the rest spread over 10000 rare names
+            switch (i % 5) {
+                case 0 -> sketch.add("Иван");
+                case 1 -> sketch.add("Андрей");
+                default -> sketch.add("Имя" + random.nextInt(10_000));
+            }
+        }
+
+        List<SpaceSaving.Entry> top = sketch.top(2);
+        assertEquals(List.of("Андрей", "Иван"), top.stream().map(SpaceSaving.Entry::item).sorted().toList());
+        for (SpaceSaving.Entry entry : top) {
+            assertTrue(entry.count() >= 20_000);
+            assertTrue(entry.count() - entry.error() <= 20_000);
+        }
+    }
+
+    @Test
+    public void mergeKeepsItemsFrequentInEitherSummary() {
+        SpaceSaving left = new SpaceSaving(4);
+        SpaceSaving right = new SpaceSaving(4);
+        left.add("Иван", 100);
+        left.add("Петр", 10);
+        right.add("Лариса", 80);
+        right.add("Петр", 30);
+        for (int i = 0; i < 10; i++) {
+            left.add("Редкое" + i);
+            right.add("Другое" + i);
+        }
+
+        left.merge(right);
+        assertEquals(List.of("Иван", "Лариса", "Петр"),
+                left.top(3).stream().map(SpaceSaving.Entry::item).toList());
+    }
+
+    @Test
+    public void summarySurvivesSerialization() {
+        SpaceSaving sketch = new SpaceSaving(8);
+        for (int i = 0; i < 20; i++) {
+            sketch.add("Имя" + i % 12, i);
+        }
+        SpaceSaving copy = SpaceSaving.fromByteArray(sketch.toByteArray());
+
+        assertEquals(sketch.top(8), copy.top(8));
+    }
+}
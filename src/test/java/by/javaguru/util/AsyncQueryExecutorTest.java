@@ -0,0 +1,161 @@
+package by.javaguru.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncQueryExecutorTest {
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void init() {
+        PoolConfig config = PoolConfig.builder()
+                .minSize(0)
+                .maxSize(2)
+                .borrowTimeoutMs(5_000)
+                .build();
+        pool = new ConnectionPool(config, () -> DriverManager.getConnection(
+                PropertiesUtil.get("db.url"),
+                PropertiesUtil.get("db.username"),
+                PropertiesUtil.get("db.password")));
+    }
+
+    @AfterEach
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void inFlightCallsAreCapped() throws Exception {
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int value = i;
+            futures.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                    return value;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.getInFlightCount());
+    }
+
+    @Test
+    public void queriesRunConcurrently() throws Exception {
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(2);
+
+        CompletableFuture<Integer> first = executor.submit(() -> select("SELECT ?::int FROM pg_sleep(0.3)", 1));
+        CompletableFuture<Integer> second = executor.submit(() -> select("SELECT ?::int FROM pg_sleep(0.3)", 2));
+
+        long start = System.nanoTime();
+        assertEquals(3, first.thenCombine(second, Integer::sum).get(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 550);
+    }
+
+    @Test
+    public void cancellingFutureCancelsRunningStatement() throws Exception {
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+
+        CompletableFuture<Integer> future = executor.submit(() -> {
+            try (Connection connection = pool.borrow();
+                 PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM pg_sleep(30)")) {
+                started.countDown();
+                statement.executeQuery();
+                return 1;
+            } catch (SQLException e) {
+                failure.set(e);
+                throw e;
+            } finally {
+                finished.countDown();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertTrue(future.cancel(true));
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals("57014", failure.get().getSQLState());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(5, select("SELECT ?::int", 5));
+    }
+
+    @Test
+    public void timeoutCancelsRunningStatement() throws Exception {
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(2);
+
+        CompletableFuture<Integer> future = executor.submit(() -> select("SELECT ?::int FROM pg_sleep(30)", 1))
+                .orTimeout(300, TimeUnit.MILLISECONDS);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+        long start = System.nanoTime();
+        while (executor.getInFlightCount() > 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getInFlightCount());
+    }
+
+    @Test
+    public void cancelledWaitingCallNeverStarts() throws Exception {
+        AsyncQueryExecutor executor = new AsyncQueryExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean started = new AtomicBoolean();
+
+        CompletableFuture<Boolean> blocker = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> waiting = executor.submit(() -> started.getAndSet(true));
+        waiting.cancel(true);
+        release.countDown();
+
+        assertTrue(blocker.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.submit(() -> 1).get(5, TimeUnit.SECONDS));
+        assertFalse(started.get());
+    }
+
+    private int select(String sql, int value) throws SQLException {
+        try (Connection connection = pool.borrow();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, value);
+            ResultSet result = statement.executeQuery();
+            result.next();
+            return result.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package by.javaguru.util;
+
+import by.javaguru.metrics.MetricsSink;
+import by.javaguru.metrics.OperationStats;
+import by.javaguru.metrics.QueryEvent;
+import by.javaguru.metrics.QueryMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+    private ConnectionPool pool;
+
+    @BeforeEach
+    public void init() {
+        PoolConfig config = PoolConfig.builder()
+                .minSize(0)
+                .maxSize(2)
+                .borrowTimeoutMs(200)
+                .build();
+        pool = new ConnectionPool(config, ConnectionPoolTest::connect);
+    }
+
+    @AfterEach
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void returnedConnectionIsReused() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            assertEquals(1, pool.getActiveCount());
+        }
+        try (Connection connection = pool.borrow()) {
+            assertTrue(connection.isValid(1));
+        }
+
+        assertEquals(1, pool.getTotalCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        try (Connection first = pool.borrow(); Connection second = pool.borrow()) {
+            assertThrows(SQLTimeoutException.class, pool::borrow);
+        }
+    }
+
+    @Test
+    public void timedOutBorrowIsRecordedAsConnectionWait() throws SQLException {
+        QueryMetrics metrics = QueryMetrics.getInstance();
+        metrics.reset();
+        try (ConnectionPool measured = new ConnectionPool(PoolConfig.builder().minSize(0).maxSize(1)
+                .borrowTimeoutMs(200).build(), ConnectionPoolTest::connect, metrics);
+             Connection connection = measured.borrow()) {
+            assertThrows(SQLTimeoutException.class, measured::borrow);
+        }
+
+        OperationStats wait = metrics.getConnectionWait();
+        assertEquals(2, wait.getCount());
+        assertEquals(1, wait.getErrors());
+        assertTrue(wait.getMaxMicros() >= 200_000);
+    }
+
+    @Test
+    public void failingSinkDoesNotFailBorrow() throws SQLException {
+        QueryMetrics metrics = QueryMetrics.getInstance();
+        MetricsSink failing = new MetricsSink() {
+            @Override
+            public void onQuery(QueryEvent event) {
+            }
+
+            @Override
+            public void onConnectionWait(long waitNanos) {
+                throw new IllegalStateException("sink failure");
+            }
+        };
+        metrics.addSink(failing);
+        try (ConnectionPool measured = new ConnectionPool(PoolConfig.builder().minSize(0).maxSize(1)
+                .borrowTimeoutMs(200).build(), ConnectionPoolTest::connect, metrics)) {
+            try (Connection connection = measured.borrow()) {
+                assertTrue(connection.isValid(1));
+            }
+
+            assertEquals(1, measured.getTotalCount());
+            assertEquals(1, measured.getIdleCount());
+            assertEquals(0, measured.getActiveCount());
+        } finally {
+            metrics.removeSink(failing);
+        }
+    }
+
+    @Test
+    public void closedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.borrow();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    public void autoCommitIsRestoredOnReturn() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            connection.setAutoCommit(false);
+        }
+        try (Connection connection = pool.borrow()) {
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void preparedStatementsAreCachedPerConnection() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.borrow();
+                 PreparedStatement statement = connection.prepareStatement("SELECT ?::int")) {
+                statement.setInt(1, i);
+                ResultSet result = statement.executeQuery();
+                result.next();
+                assertEquals(i, result.getInt(1));
+            }
+        }
+
+        assertEquals(1, pool.getStatementCacheMisses());
+        assertEquals(2, pool.getStatementCacheHits());
+    }
+
+    @Test
+    public void closingCachedStatementClosesItsResultSet() throws SQLException {
+        try (Connection connection = pool.borrow()) {
+            PreparedStatement statement = connection.prepareStatement("SELECT 1");
+            ResultSet result = statement.executeQuery();
+            statement.close();
+
+            assertTrue(result.isClosed());
+            assertFalse(connection.isClosed());
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(
+                PropertiesUtil.get("db.url"),
+                PropertiesUtil.get("db.username"),
+                PropertiesUtil.get("db.password"));
+    }
+}
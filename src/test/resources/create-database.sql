@@ -35,9 +35,13 @@ CREATE TABLE flights_test.flight
     arrival_date           timestamp                            NOT NULL,
     arrival_airport_code   varchar(3) REFERENCES airport (code) NOT NULL,
     aircraft_id            bigint REFERENCES aircraft (id)      NOT NULL,
-    status                 varchar(32)                          NOT NULL
+    status                 varchar(32)                          NOT NULL,
+    UNIQUE (flight_no, departure_date)
 );
 
+-- Поиск рейсов по маршруту и времени вылета (FlightDao.search)
+CREATE INDEX flight_route_departure_idx ON flights_test.flight (departure_airport_code, arrival_airport_code, departure_date);
+
 -- Таблица "Билет"
 CREATE TABLE flights_test.ticket
 (
@@ -50,6 +54,104 @@ CREATE TABLE flights_test.ticket
     UNIQUE (flight_id, seat_no)
 );
 
+-- Число билетов по паспорту и имени пассажира, ведётся триггерами на ticket
+CREATE TABLE flights_test.passenger_ticket_count
+(
+    passport_no    varchar(32)  NOT NULL,
+    passenger_name varchar(128) NOT NULL,
+    ticket_count   bigint       NOT NULL,
+    PRIMARY KEY (passport_no, passenger_name)
+);
+
+-- Число билетов по имени (первому слову passenger_name), ведётся триггерами на ticket.
+-- Счётчик имени разложен по 16 слотам (ticket.id % 16), чтобы параллельные продажи
+-- билетов на одно имя не ждали блокировку одной строки
+CREATE TABLE flights_test.first_name_count
+(
+    name         varchar(128) NOT NULL,
+    slot         smallint     NOT NULL,
+    ticket_count bigint       NOT NULL,
+    PRIMARY KEY (name, slot)
+);
+
+-- Тела функций содержат ';', поэтому до конца функций разделитель команд для ScriptRunner - '--;',
+-- для psql это комментарий
+-- @DELIMITER --;
+CREATE FUNCTION flights_test.count_ticket_passengers() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    remaining bigint;
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE flights_test.passenger_ticket_count
+        SET ticket_count = ticket_count - 1
+        WHERE passport_no = OLD.passport_no
+          AND passenger_name = OLD.passenger_name
+        RETURNING ticket_count INTO remaining;
+        IF remaining = 0 THEN
+            DELETE
+            FROM flights_test.passenger_ticket_count
+            WHERE passport_no = OLD.passport_no
+              AND passenger_name = OLD.passenger_name;
+        END IF;
+
+        UPDATE flights_test.first_name_count
+        SET ticket_count = ticket_count - 1
+        WHERE name = split_part(OLD.passenger_name, ' ', 1)
+          AND slot = OLD.id % 16
+        RETURNING ticket_count INTO remaining;
+        IF remaining = 0 THEN
+            DELETE
+            FROM flights_test.first_name_count
+            WHERE name = split_part(OLD.passenger_name, ' ', 1)
+              AND slot = OLD.id % 16;
+        END IF;
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO flights_test.passenger_ticket_count AS c (passport_no, passenger_name, ticket_count)
+        VALUES (NEW.passport_no, NEW.passenger_name, 1)
+        ON CONFLICT (passport_no, passenger_name) DO UPDATE SET ticket_count = c.ticket_count + 1;
+
+        INSERT INTO flights_test.first_name_count AS c (name, slot, ticket_count)
+        VALUES (split_part(NEW.passenger_name, ' ', 1), NEW.id % 16, 1)
+        ON CONFLICT (name, slot) DO UPDATE SET ticket_count = c.ticket_count + 1;
+    END IF;
+    RETURN NULL;
+END
+$$; --;
+
+CREATE FUNCTION flights_test.clear_ticket_passengers() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    TRUNCATE flights_test.passenger_ticket_count, flights_test.first_name_count;
+    RETURN NULL;
+END
+$$; --;
+-- @DELIMITER ;
+
+CREATE TRIGGER ticket_passengers
+    AFTER INSERT OR DELETE
+    ON flights_test.ticket
+    FOR EACH ROW
+EXECUTE FUNCTION flights_test.count_ticket_passengers();
+
+-- изменение только стоимости билета счётчики не трогает
+CREATE TRIGGER ticket_passengers_update
+    AFTER UPDATE OF passport_no, passenger_name
+    ON flights_test.ticket
+    FOR EACH ROW
+    WHEN (OLD.passport_no IS DISTINCT FROM NEW.passport_no OR OLD.passenger_name IS DISTINCT FROM NEW.passenger_name)
+EXECUTE FUNCTION flights_test.count_ticket_passengers();
+
+CREATE TRIGGER ticket_passengers_truncate
+    AFTER TRUNCATE
+    ON flights_test.ticket
+    FOR EACH STATEMENT
+EXECUTE FUNCTION flights_test.clear_ticket_passengers();
+
 INSERT INTO flights_test.airport (code, country, city)
 VALUES ('MNK', 'Беларусь', 'Минск'),
        ('LDN', 'Англия', 'Лондон'),